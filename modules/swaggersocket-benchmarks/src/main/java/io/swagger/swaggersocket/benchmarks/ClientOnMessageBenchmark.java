@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.java.jsr356.client.impl.JSR356SwaggerSocketClientImpl;
+import io.swagger.swaggersocket.protocol.Header;
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch sent with the blocking {@code send(List)} of the JSR356 client over an in-memory session answering every
+ * request frame at once: the client serializes the batch, then its {@code onMessage} strips the TrackMessageSize
+ * delimiter, reads the {@link ResponseMessage} and completes the waiting futures. {@code delimited} shows the cost
+ * of the delimiter stripping alone. {@code sendConcurrently} shares the client between four callers, each with its own
+ * batch, whose frames go through the outbound queue of the client.
+ * <p>
+ * Run with {@code -prof gc} for the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientOnMessageBenchmark {
+
+    private static final String IDENTITY = "0b7c4bd4-5d8e-4c54-9c4f-6b3c1c7c2a11";
+    private static final String SLOT = "uuid-slot-";
+    private static final String UUID_FIELD = "\"uuid\":\"";
+
+    @Param({"1", "10", "100"})
+    public int batch;
+
+    @Param({"true", "false"})
+    public boolean delimited;
+
+    private JSR356SwaggerSocketClientImpl client;
+    // the answer to a batch split around the uuids of its requests
+    private String[] frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Response> responses = new ArrayList<Response>(batch);
+        for (int i = 0; i < batch; i++) {
+            responses.add(new Response.Builder()
+                    .uuid(SLOT + i + "-")
+                    .status(200, "OK")
+                    .path("/test/echo")
+                    .header(new Header("Content-Type", "text/plain"))
+                    .body("echo " + i)
+                    .build());
+        }
+        ResponseMessage message = new ResponseMessage(IDENTITY, responses.get(0));
+        message.setResponses(responses);
+        String json = new ObjectMapper().writeValueAsString(message);
+        frame = json.split(SLOT + "\\d+-", -1);
+        if (delimited) {
+            frame[0] = json.length() + "<->" + frame[0];
+        }
+
+        client = new JSR356SwaggerSocketClientImpl(loopback());
+        client.open("ws://localhost/test");
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public List<Response> send(Caller caller) {
+        return client.send(caller.requests);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Response> sendConcurrently(Caller caller) {
+        return client.send(caller.requests);
+    }
+
+    /**
+     * The batch of one calling thread, its uuids are reset by every send.
+     */
+    @State(Scope.Thread)
+    public static class Caller {
+        private List<Request> requests;
+
+        @Setup
+        public void setUp(ClientOnMessageBenchmark benchmark) {
+            requests = new ArrayList<Request>(benchmark.batch);
+            for (int i = 0; i < benchmark.batch; i++) {
+                requests.add(new Request.Builder().method("POST").path("/test/echo").body("echo " + i).build());
+            }
+        }
+    }
+
+    /**
+     * Answers the handshake and every request frame on the writing thread.
+     */
+    private WebSocketContainer loopback() {
+        final RemoteEndpoint.Basic remote = proxy(RemoteEndpoint.Basic.class, (p, method, args) -> {
+            if ("sendText".equals(method.getName()) && ((String) args[0]).startsWith("{\"handshake\"")) {
+                client.onMessage("{\"status\":{\"statusCode\":200,\"reasonPhrase\":\"OK\"},\"identity\":\""
+                        + IDENTITY + "\"}");
+            }
+            return null;
+        });
+        final RemoteEndpoint.Async async = proxy(RemoteEndpoint.Async.class, (p, method, args) -> {
+            if ("sendText".equals(method.getName()) && args.length == 2) {
+                String text = (String) args[0];
+                if (text.startsWith("{\"identity\"")) {
+                    client.onMessage(answer(text));
+                }
+                ((SendHandler) args[1]).onResult(new SendResult());
+            }
+            return null;
+        });
+        final Session session = proxy(Session.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getBasicRemote":
+                    return remote;
+                case "getAsyncRemote":
+                    return async;
+                case "isOpen":
+                    return true;
+                default:
+                    return null;
+            }
+        });
+        return proxy(WebSocketContainer.class, (p, method, args) -> {
+            if ("connectToServer".equals(method.getName())) {
+                client.onOpen(session);
+                return session;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The responses to a request frame, with the uuids it carries in order.
+     */
+    private String answer(String request) {
+        StringBuilder b = new StringBuilder(frame[0]);
+        int from = 0;
+        for (int i = 0; i < batch; i++) {
+            int start = request.indexOf(UUID_FIELD, from) + UUID_FIELD.length();
+            from = request.indexOf('"', start);
+            b.append(request, start, from).append(frame[i + 1]);
+        }
+        return b.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import io.swagger.swaggersocket.server.DispatchExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches a batch of requests that block like {@code SwaggerSocketResource.echo} with {@code sleep n} and waits
+ * for all of them. The time per batch shows how many sleeping requests the executor holds in flight: about
+ * {@code sleepMillis} when all of them run at once, {@code inFlight / threads * sleepMillis} on the bounded pool.
+ * <p>
+ * The virtual executor falls back to the platform pool on runtimes older than JDK 21.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DispatchExecutorBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    @Param({"100", "1000", "10000"})
+    public int inFlight;
+
+    @Param({"20"})
+    public int sleepMillis;
+
+    private ExecutorService service;
+
+    @Setup
+    public void setUp() {
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        service = DispatchExecutors.newDispatchExecutor("virtual".equals(executor), threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdownNow();
+    }
+
+    @Benchmark
+    public long sleepingRequests() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            service.execute(() -> {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return done.getCount();
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import io.swagger.swaggersocket.server.HeaderPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The header filtering done by {@code createResponseBuilder} for one response: matching the included and excluded
+ * patterns against every header name, against a {@link HeaderPolicy} that caches the decision per name.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderPolicyBenchmark {
+
+    private static final String[] NAMES = {
+            "Content-Type", "Content-Length", "Content-Encoding", "Content-Language", "Cache-Control", "ETag",
+            "Last-Modified", "Expires", "Date", "Server", "Vary", "Location", "Set-Cookie", "Pragma", "Age",
+            "Allow", "Link", "Retry-After", "Access-Control-Allow-Origin", "Access-Control-Allow-Credentials",
+            "Access-Control-Expose-Headers", "Strict-Transport-Security", "X-Content-Type-Options",
+            "X-Frame-Options", "X-Request-Id", "X-Correlation-Id", "X-RateLimit-Limit", "X-RateLimit-Remaining",
+            "X-Atmosphere-tracking-id", "X-Powered-By"
+    };
+
+    @Param({"10", "20", "30"})
+    public int headers;
+
+    private Pattern included;
+    private Pattern excluded;
+    private HeaderPolicy policy;
+    private Map<String, String> responseHeaders;
+
+    @Setup
+    public void setUp() {
+        included = Pattern.compile("X-.*|Cache-Control|ETag|Last-Modified|Location|Link", Pattern.CASE_INSENSITIVE);
+        excluded = Pattern.compile("X-Atmosphere-.*|X-Powered-By", Pattern.CASE_INSENSITIVE);
+        policy = new HeaderPolicy(included, excluded);
+        responseHeaders = new LinkedHashMap<String, String>();
+        for (int i = 0; i < headers; i++) {
+            responseHeaders.put(NAMES[i], "value-" + i);
+        }
+    }
+
+    @Benchmark
+    public int regex() {
+        int accepted = 0;
+        for (Map.Entry<String, String> hv : responseHeaders.entrySet()) {
+            if (!"Content-Type".equalsIgnoreCase(hv.getKey())
+                    && included.matcher(hv.getKey()).matches()
+                    && !excluded.matcher(hv.getKey()).matches()) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Benchmark
+    public int cached() {
+        int accepted = 0;
+        for (Map.Entry<String, String> hv : responseHeaders.entrySet()) {
+            if (policy.accept(hv.getKey())) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Header;
+import io.swagger.swaggersocket.protocol.QueryString;
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.server.SwaggerSocketProtocolInterceptor;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResponse;
+import org.atmosphere.cpr.FrameworkConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request work of {@link SwaggerSocketProtocolInterceptor} outside of the framework: turning a protocol
+ * {@link Request} into the {@link AtmosphereRequest} that is dispatched, and wrapping what the resource wrote into
+ * a response, filtering its headers with the included and excluded patterns, then serializing it as
+ * {@code transformPayload} does for the responses not written by the envelope writer.
+ * <p>
+ * Run with {@code -prof gc} for the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptorBenchmark {
+
+    @Param({"5", "20"})
+    public int headers;
+
+    @Param({"false", "true"})
+    public boolean rawjson;
+
+    private Interceptor interceptor;
+    private ObjectMapper mapper;
+    private AtmosphereRequest connection;
+    private Request request;
+    private AtmosphereResponse response;
+    private String body;
+
+    /**
+     * Exposes the protected members used while dispatching.
+     */
+    static final class Interceptor extends SwaggerSocketProtocolInterceptor {
+        private final Request request;
+
+        Interceptor(Request request) {
+            this.request = request;
+        }
+
+        static AtmosphereRequest toRequest(AtmosphereRequest connection, Request request) {
+            return toAtmosphereRequest(connection, request);
+        }
+
+        Object wrap(AtmosphereResponse res, String message) {
+            return wrapMessage(res, message);
+        }
+
+        @Override
+        protected Request lookupRequest(AtmosphereRequest request) {
+            return this.request;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        List<Header> requestHeaders = new ArrayList<Header>();
+        for (int i = 0; i < headers; i++) {
+            requestHeaders.add(new Header("X-Request-Header-" + i, "value-" + i));
+        }
+        List<QueryString> query = new ArrayList<QueryString>();
+        query.add(new QueryString("page", "2"));
+        query.add(new QueryString("size", "50"));
+        request = new Request.Builder()
+                .uuid("0b7c4bd4-5d8e-4c54-9c4f-6b3c1c7c2a11")
+                .method("POST")
+                .path("/test/echo")
+                .format("application/json")
+                .headers(requestHeaders)
+                .queryString(query)
+                .body("{\"test\":\"request\"}")
+                .build();
+
+        interceptor = new Interceptor(request);
+        interceptor.includedheaders("X-.*|Cache-Control|ETag|Last-Modified|Location")
+                .excludedheaders("X-Atmosphere-.*|X-Powered-By")
+                .rawjson(rawjson);
+        mapper = new ObjectMapper();
+
+        connection = new AtmosphereRequest.Builder()
+                .requestURL("http://localhost:8080/ws")
+                .requestURI("/ws")
+                .pathInfo("/ws")
+                .method("GET")
+                .build();
+        // a WebSocket without a handshake, the response has no connection and no transaction
+        connection.setAttribute(FrameworkConfig.ATMOSPHERE_RESOURCE, Proxy.newProxyInstance(
+                AtmosphereResource.class.getClassLoader(), new Class<?>[]{AtmosphereResource.class},
+                (proxy, method, args) -> "transport".equals(method.getName())
+                        ? AtmosphereResource.TRANSPORT.WEBSOCKET : null));
+
+        response = new AtmosphereResponse(null, null, connection, false);
+        response.setStatus(200, "OK");
+        response.setContentType("application/json");
+        String[] names = {"Cache-Control", "ETag", "Last-Modified", "Date", "Server", "Vary", "X-Powered-By",
+                "X-Atmosphere-tracking-id", "X-Request-Id", "X-RateLimit-Limit"};
+        for (int i = 0; i < headers; i++) {
+            response.setHeader(i < names.length ? names[i] : "X-Response-Header-" + i, "value-" + i);
+        }
+        body = "{\"test\":\"response\",\"items\":[1,2,3,4,5,6,7,8,9,10]}";
+    }
+
+    @Benchmark
+    public AtmosphereRequest toAtmosphereRequest() {
+        return Interceptor.toRequest(connection, request);
+    }
+
+    @Benchmark
+    public Object wrapMessage() {
+        return interceptor.wrap(response, body);
+    }
+
+    @Benchmark
+    public byte[] wrapAndSerialize() throws IOException {
+        return mapper.writeValueAsBytes(interceptor.wrap(response, body));
+    }
+}
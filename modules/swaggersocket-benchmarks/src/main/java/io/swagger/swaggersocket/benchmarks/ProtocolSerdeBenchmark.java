@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Header;
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.RequestMessage;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import io.swagger.swaggersocket.protocol.StatusMessage;
+import io.swagger.swaggersocket.server.SwaggerSocketMessageReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing and reading the frames of the protocol: the request {@code Message} the client sends and the server
+ * reads with {@link SwaggerSocketMessageReader}, the {@link ResponseMessage} going back and the {@link StatusMessage}
+ * answering a handshake or a rejected request.
+ * <p>
+ * Run with {@code -prof gc} for the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolSerdeBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int batch;
+
+    private ObjectMapper mapper;
+    private SwaggerSocketMessageReader reader;
+    private RequestMessage message;
+    private ResponseMessage responseMessage;
+    private StatusMessage statusMessage;
+    private byte[] messageBytes;
+    private byte[] responseMessageBytes;
+    private byte[] statusMessageBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ObjectMapper();
+        reader = new SwaggerSocketMessageReader(mapper);
+
+        Request[] requests = new Request[batch];
+        List<Response> responses = new ArrayList<Response>(batch);
+        for (int i = 0; i < batch; i++) {
+            String uuid = UUID.randomUUID().toString();
+            requests[i] = new Request.Builder()
+                    .uuid(uuid)
+                    .method("POST")
+                    .path("/test/echo/" + i)
+                    .format("application/json")
+                    .headers(Collections.singletonList(new Header("Accept", "application/json")))
+                    .body("{\"test\":\"request " + i + "\"}")
+                    .build();
+            responses.add(new Response.Builder()
+                    .uuid(uuid)
+                    .status(200, "OK")
+                    .path("/test/echo/" + i)
+                    .header(new Header("Content-Type", "application/json"))
+                    .body("{\"test\":\"response " + i + "\"}")
+                    .build());
+        }
+        String identity = UUID.randomUUID().toString();
+        message = new RequestMessage.Builder().identity(identity).requests(requests).build();
+        responseMessage = new ResponseMessage(identity, responses.get(0));
+        responseMessage.setResponses(responses);
+        statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(200, "OK"))
+                .identity(identity).credits(batch).build();
+
+        messageBytes = mapper.writeValueAsBytes(message);
+        responseMessageBytes = mapper.writeValueAsBytes(responseMessage);
+        statusMessageBytes = mapper.writeValueAsBytes(statusMessage);
+    }
+
+    @Benchmark
+    public byte[] writeMessage() throws IOException {
+        return mapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Object readMessage() throws IOException {
+        return reader.read(new ByteArrayInputStream(messageBytes));
+    }
+
+    @Benchmark
+    public byte[] writeResponseMessage() throws IOException {
+        return mapper.writeValueAsBytes(responseMessage);
+    }
+
+    @Benchmark
+    public ResponseMessage readResponseMessage() throws IOException {
+        return mapper.readValue(responseMessageBytes, ResponseMessage.class);
+    }
+
+    @Benchmark
+    public byte[] writeStatusMessage() throws IOException {
+        return mapper.writeValueAsBytes(statusMessage);
+    }
+
+    @Benchmark
+    public StatusMessage readStatusMessage() throws IOException {
+        return mapper.readValue(statusMessageBytes, StatusMessage.class);
+    }
+}
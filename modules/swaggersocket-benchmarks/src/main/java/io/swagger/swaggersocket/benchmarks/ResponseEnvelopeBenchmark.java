@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Header;
+import io.swagger.swaggersocket.protocol.JsonBody;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import io.swagger.swaggersocket.server.BufferPool;
+import io.swagger.swaggersocket.server.ResponseEnvelopeWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrapping a JSON body written by a resource into a response frame: decoding it and serializing a
+ * {@link ResponseMessage} with the {@link ObjectMapper} as {@code transformPayload} used to, against the
+ * {@link ResponseEnvelopeWriter} escaping the body bytes or validating and copying them as a raw JSON value.
+ * <p>
+ * Run with {@code -prof gc} to compare the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseEnvelopeBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int bodySize;
+
+    private ObjectMapper mapper;
+    private Response response;
+    private byte[] body;
+    private BufferPool pool;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper();
+        response = new Response.Builder()
+                .status(200, "OK")
+                .header(new Header("Content-Type", "application/json"))
+                .path("/test/testJsonObject")
+                .build();
+        body = jsonBody(bodySize);
+        pool = new BufferPool(16 * 1024 * 1024);
+    }
+
+    static byte[] jsonBody(int size) {
+        StringBuilder b = new StringBuilder(size + 64).append('[');
+        for (int i = 0; b.length() < size - 32; i++) {
+            if (i > 0) {
+                b.append(',');
+            }
+            b.append("{\"id\":").append(i).append(",\"name\":\"item ").append(i).append("\"}");
+        }
+        return b.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] objectMapper() throws IOException {
+        Response r = new Response.Builder()
+                .status(response.getStatusCode(), response.getReasonPhrase())
+                .header(response.getHeaders().get(0))
+                .uuid(response.getUuid())
+                .path(response.getPath())
+                .body(new String(body, "UTF-8"))
+                .build();
+        return mapper.writeValueAsBytes(new ResponseMessage("identity", r));
+    }
+
+    @Benchmark
+    public byte[] envelopeString() throws IOException {
+        return ResponseEnvelopeWriter.write("identity", response, body, 0, body.length, "UTF-8", false, pool);
+    }
+
+    @Benchmark
+    public byte[] envelopeRaw() throws IOException {
+        // the interceptor checks the body before embedding it
+        boolean valid = JsonBody.isValid(body, 0, body.length);
+        return ResponseEnvelopeWriter.write("identity", response, body, 0, body.length, "UTF-8", valid, pool);
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import io.swagger.swaggersocket.server.DispatchExecutors;
+import io.swagger.swaggersocket.server.SwaggerSocketProtocolInterceptor;
+import org.atmosphere.cpr.Action;
+import org.atmosphere.cpr.AtmosphereFramework;
+import org.atmosphere.cpr.AtmosphereInterceptorWriter;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResponse;
+import org.atmosphere.cpr.FrameworkConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.ServletOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages of one request each read from a WebSocket by {@link SwaggerSocketProtocolInterceptor#inspect}, on the
+ * benchmark thread standing in for the container thread, and dispatched to a resource sleeping like the
+ * {@code /sleep} test resource before writing its answer. An operation reads {@code messages} messages, then waits
+ * for their responses to be written. Without an executor the container thread runs each request, an operation takes
+ * {@code messages * sleepMillis}. With one it goes back to reading right away, an operation takes about
+ * {@code sleepMillis} as long as the executor holds the sleeping requests.
+ * <p>
+ * The virtual executor falls back to the platform pool on runtimes older than JDK 21.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SleepDispatchBenchmark {
+
+    @Param({"none", "platform", "virtual"})
+    public String executor;
+
+    @Param({"10", "100"})
+    public int messages;
+
+    @Param({"20"})
+    public int sleepMillis;
+
+    private SwaggerSocketProtocolInterceptor interceptor;
+    private ExecutorService service;
+    private volatile AtmosphereRequest current;
+    private AtmosphereResponse response;
+    private Map<String, Object> connectionAttributes;
+    private String frame;
+    private final Semaphore written = new Semaphore(0);
+
+    /**
+     * Answers every dispatched request as the {@code /sleep} resource does.
+     */
+    static final class SleepingFramework extends AtmosphereFramework {
+        @Override
+        public Action doCometSupport(AtmosphereRequest req, AtmosphereResponse res) throws IOException {
+            String millis = req.getReader().readLine();
+            try {
+                Thread.sleep(Long.parseLong(millis.trim()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            res.setStatus(200, "OK");
+            res.setContentType("text/plain");
+            ServletOutputStream out = res.getOutputStream();
+            out.write(("slept " + millis).getBytes(StandardCharsets.UTF_8));
+            out.close();
+            return Action.CANCELLED;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        interceptor = new SwaggerSocketProtocolInterceptor().heartbeatinterval(0);
+        if (!"none".equals(executor)) {
+            int threads = Runtime.getRuntime().availableProcessors() * 2;
+            service = DispatchExecutors.newDispatchExecutor("virtual".equals(executor), threads);
+            interceptor.executor(service);
+        }
+
+        final AtmosphereFramework framework = new SleepingFramework();
+        AtmosphereResource resource = (AtmosphereResource) Proxy.newProxyInstance(
+                AtmosphereResource.class.getClassLoader(), new Class<?>[]{AtmosphereResource.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRequest":
+                            return current;
+                        case "getResponse":
+                            return response;
+                        case "transport":
+                            return AtmosphereResource.TRANSPORT.WEBSOCKET;
+                        case "getAtmosphereConfig":
+                            return framework.getAtmosphereConfig();
+                        case "uuid":
+                            return "websocket";
+                        case "forceBinaryWrite":
+                            return args == null ? Boolean.FALSE : proxy;
+                        case "isCancelled":
+                        case "isSuspended":
+                        case "isResumed":
+                            return Boolean.FALSE;
+                        default:
+                            return method.getReturnType().isInstance(proxy) ? proxy : null;
+                    }
+                });
+
+        AtmosphereRequest handshake = newRequest("{\"handshake\":{\"protocolVersion\":\"1.0\",\"protocolName\":"
+                + "\"SwaggerSocket\",\"uuid\":\"0\",\"path\":\"/\"}}");
+        handshake.setAttribute(FrameworkConfig.ATMOSPHERE_RESOURCE, resource);
+        final String[] answer = new String[1];
+        response = new AtmosphereResponse(null, new AtmosphereInterceptorWriter() {
+            @Override
+            protected void writeReady(AtmosphereResponse res, byte[] data) {
+                if (answer[0] == null) {
+                    answer[0] = new String(data, StandardCharsets.UTF_8);
+                } else {
+                    written.release();
+                }
+            }
+        }, handshake, false);
+        current = handshake;
+        interceptor.inspect(resource);
+        // the connection state is kept with the WebSocket request, every message sees it
+        connectionAttributes = new HashMap<String, Object>(handshake.attributes());
+
+        String identity = answer[0].replaceAll(".*\"identity\":\"([^\"]+)\".*", "$1");
+        frame = "{\"identity\":\"" + identity + "\",\"requests\":[{\"uuid\":\"1\",\"method\":\"POST\","
+                + "\"path\":\"/sleep\",\"dataFormat\":\"text/plain\",\"messageBody\":\"" + sleepMillis + "\"}]}";
+        // sets up the writer of the WebSocket
+        read(resource);
+        written.acquireUninterruptibly();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (service != null) {
+            service.shutdownNow();
+        }
+    }
+
+    private AtmosphereRequest newRequest(String body) {
+        return new AtmosphereRequest.Builder()
+                .requestURL("http://localhost:8080/ws")
+                .requestURI("/ws")
+                .pathInfo("/ws")
+                .method("POST")
+                .headers(Collections.singletonMap("SwaggerSocket", "1.0"))
+                .body(body)
+                .build();
+    }
+
+    private void read(AtmosphereResource resource) {
+        AtmosphereRequest message = newRequest(frame);
+        message.attributes().putAll(connectionAttributes);
+        current = message;
+        interceptor.inspect(resource);
+    }
+
+    @Benchmark
+    public int sleepingRequests() throws InterruptedException {
+        AtmosphereResource resource = (AtmosphereResource) current.getAttribute(FrameworkConfig.ATMOSPHERE_RESOURCE);
+        for (int i = 0; i < messages; i++) {
+            read(resource);
+        }
+        written.acquire(messages);
+        return messages;
+    }
+}
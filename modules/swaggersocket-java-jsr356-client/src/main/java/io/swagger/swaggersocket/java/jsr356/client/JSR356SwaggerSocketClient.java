@@ -19,6 +19,8 @@ import io.swagger.swaggersocket.protocol.Request;
 import io.swagger.swaggersocket.protocol.Response;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 public interface JSR356SwaggerSocketClient {
@@ -29,6 +31,13 @@ public interface JSR356SwaggerSocketClient {
 
     boolean isConnected();
 
+    /**
+     * The number of requests waiting for their response, 0 for a client that doesn't keep count.
+     */
+    default int getPendingRequestCount() {
+        return 0;
+    }
+
     Response send(Request request);
 
     List<Response> send(List<Request> requests);
@@ -37,6 +46,10 @@ public interface JSR356SwaggerSocketClient {
 
     <T> T send(Request request, Class<T> resultClass);
 
+    /**
+     * Send without waiting for the response nor for a credit: the requests beyond the credits granted by the server
+     * wait in the client and are written as the responses of the earlier ones come back.
+     */
     Future<Response> sendAsync(Request request);
 
     List<Future<Response>> sendAsync(List<Request> requests);
@@ -45,6 +58,34 @@ public interface JSR356SwaggerSocketClient {
 
     <T> Future<T> sendAsync(Request request, Class<T> resultClass);
 
+    /**
+     * Same as {@link #sendAsync(Request)} without a thread waiting for the response. The stage is completed on the
+     * thread reading the WebSocket, use the async methods of the stage for blocking or long work. Sending from a
+     * dependent stage is fine as it never waits, even with no credit left.
+     * <p>
+     * By default the future of {@link #sendAsync(Request)}, when it isn't a {@link CompletableFuture} a thread of the
+     * common pool waits for it.
+     */
+    default CompletionStage<Response> sendAsyncStage(Request request) {
+        return Stages.of(sendAsync(request));
+    }
+
+    /**
+     * Same as {@link #sendAsync(List)}, completed with the responses in the order of the requests once all of them
+     * are received.
+     */
+    default CompletionStage<List<Response>> sendAsyncStage(List<Request> requests) {
+        return Stages.allOf(sendAsync(requests));
+    }
+
+    default <T> CompletionStage<List<T>> sendAsyncStage(List<Request> requests, Class<T> resultClass) {
+        return Stages.allOf(sendAsync(requests, resultClass));
+    }
+
+    default <T> CompletionStage<T> sendAsyncStage(Request request, Class<T> resultClass) {
+        return Stages.of(sendAsync(request, resultClass));
+    }
+
     void close();
 
 }
@@ -0,0 +1,72 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * The {@link CompletionStage}s of the futures returned by the sendAsync methods of a {@link JSR356SwaggerSocketClient}.
+ */
+final class Stages {
+
+    private Stages() {
+    }
+
+    /**
+     * @return the future itself if it is a {@link CompletableFuture}, otherwise a stage completed by a thread of the
+     * common pool waiting for it
+     */
+    static <T> CompletableFuture<T> of(final Future<T> future) {
+        if (future instanceof CompletableFuture) {
+            @SuppressWarnings("unchecked")
+            final CompletableFuture<T> stage = (CompletableFuture<T>) future;
+            return stage;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (final ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            }
+        });
+    }
+
+    /**
+     * @return the results in the order of the futures, once all of them are complete
+     */
+    static <T> CompletionStage<List<T>> allOf(final List<Future<T>> futures) {
+        final List<CompletableFuture<T>> stages = new ArrayList<CompletableFuture<T>>(futures.size());
+        for (final Future<T> future : futures) {
+            stages.add(of(future));
+        }
+        return CompletableFuture.allOf(stages.toArray(new CompletableFuture<?>[stages.size()])).thenApply(v -> {
+            final List<T> results = new ArrayList<T>(stages.size());
+            for (final CompletableFuture<T> stage : stages) {
+                results.add(stage.join());
+            }
+            return results;
+        });
+    }
+}
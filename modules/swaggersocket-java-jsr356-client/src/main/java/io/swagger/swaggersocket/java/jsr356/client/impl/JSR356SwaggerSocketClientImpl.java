@@ -16,7 +16,9 @@
 package io.swagger.swaggersocket.java.jsr356.client.impl;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -29,47 +31,187 @@ import org.slf4j.LoggerFactory;
 import javax.websocket.*;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 @ClientEndpoint
 public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient {
 
     private static final String DELIMITER_PATTERN = "^\\d+<->";
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+    private static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 60000;
+    private static final int DEFAULT_MAX_PENDING_REQUESTS = 65536;
+    private static final long OPEN_TIMEOUT_SECONDS = 30;
     private static final Logger LOG = LoggerFactory.getLogger(JSR356SwaggerSocketClientImpl.class);
 
-    private final Map<String, FutureCountDownLatch> messages;
+    private final PendingRequests<ResponseFuture<?>> messages;
+    private volatile long requestTimeout = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    // fails the timed out requests, off the thread of the shared timer wheel
+    private volatile Executor expiryExecutor = ForkJoinPool.commonPool();
+    private volatile int maxPendingRequests = DEFAULT_MAX_PENDING_REQUESTS;
+    private volatile int reconnectAttempts = 0;
+    private volatile long reconnectDelay = 100;
+    private volatile long maxReconnectDelay = 10000;
+    private volatile int reconnectBufferSize = 1024;
     private final ObjectMapper objectMapper;
+    // encodes the frames once a binary data format has been accepted by the server, null while on JSON text
+    private volatile ObjectMapper frameMapper;
+    // the requests the server lets this client have in flight, null when it doesn't limit them
+    private volatile Semaphore credits;
+    private final Set<String> creditHolders = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // the requests written as credits come back, in the order they were sent
+    private final Queue<ResponseFuture<?>> awaitingCredit = new ConcurrentLinkedQueue<ResponseFuture<?>>();
+    // true when the server splits the large bodies, the chunks received so far per request
+    private volatile boolean chunked;
+    private final Map<String, Chunks> chunks = new ConcurrentHashMap<String, Chunks>();
+    // true when the server reads the JSON bodies embedded as JSON values of the frame
+    private volatile boolean rawJson;
+    // serializes open and close, the requests are sent without it
     private final ReentrantLock reentrantLock;
     private final WebSocketContainer webSocketContainer;
 
     private CountDownLatch connectionOpenLatch = null;
 
     private Handshake handshake = null;
-    private String identity = null;
-    private Session session = null;
-
-    private boolean isConnected;
+    private URI uri = null;
+    private volatile String identity = null;
+    private volatile Session session = null;
+    private volatile OutboundQueue outbound = null;
+
+    private volatile boolean isConnected;
+    // true between a lost connection and the end of the reconnect attempts
+    private volatile boolean reconnecting;
+    // true from close() to the next open(), no reconnect meanwhile
+    private volatile boolean closing;
+    // the requests sent while reconnecting
+    private final AtomicInteger buffered = new AtomicInteger();
+    // the thread opening a lost connection again, interrupted by close()
+    private volatile Thread reconnector;
 
     public JSR356SwaggerSocketClientImpl() {
-        messages = new ConcurrentHashMap<String, FutureCountDownLatch>();
-        objectMapper = new ObjectMapper();
-        objectMapper.getDeserializationConfig().without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-        objectMapper.getSerializationConfig().without(SerializationFeature.FAIL_ON_EMPTY_BEANS);
-        objectMapper.getSerializationConfig().withSerializationInclusion(JsonInclude.Include.NON_NULL);
-        objectMapper.configure(SerializationFeature.WRITE_DATE_KEYS_AS_TIMESTAMPS, false);
+        this(ContainerProvider.getWebSocketContainer());
+    }
+
+    /**
+     * @param webSocketContainer the container opening the WebSocket session, for instance a configured one
+     */
+    public JSR356SwaggerSocketClientImpl(final WebSocketContainer webSocketContainer) {
+        messages = new PendingRequests<ResponseFuture<?>>(TimerWheel.shared(), (uuid, future) -> expire(future));
+        objectMapper = configure(new ObjectMapper());
         reentrantLock = new ReentrantLock();
-        webSocketContainer = ContainerProvider.getWebSocketContainer();
+        this.webSocketContainer = webSocketContainer;
+    }
+
+    /**
+     * How long a request waits for its response before failing, 0 for no limit. Defaults to 60 seconds.
+     */
+    public JSR356SwaggerSocketClientImpl requestTimeout(final long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    public void setRequestTimeout(final long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * The executor failing the timed out requests, their dependent stages run there too. Defaults to the common
+     * fork join pool.
+     */
+    public JSR356SwaggerSocketClientImpl expiryExecutor(final Executor expiryExecutor) {
+        this.expiryExecutor = expiryExecutor;
+        return this;
+    }
+
+    public void setExpiryExecutor(final Executor expiryExecutor) {
+        this.expiryExecutor = expiryExecutor;
+    }
+
+    /**
+     * The number of requests waiting for their response beyond which sending fails at once. Defaults to 65536.
+     */
+    public JSR356SwaggerSocketClientImpl maxPendingRequests(final int maxPendingRequests) {
+        this.maxPendingRequests = maxPendingRequests;
+        return this;
+    }
+
+    public void setMaxPendingRequests(final int maxPendingRequests) {
+        this.maxPendingRequests = maxPendingRequests;
+    }
+
+    /**
+     * The number of times a lost connection is opened again before its pending requests fail, 0 to never reconnect.
+     * Defaults to 0: the pending requests fail with the connection.
+     */
+    public JSR356SwaggerSocketClientImpl reconnectAttempts(final int reconnectAttempts) {
+        this.reconnectAttempts = reconnectAttempts;
+        return this;
+    }
+
+    public void setReconnectAttempts(final int reconnectAttempts) {
+        this.reconnectAttempts = reconnectAttempts;
+    }
+
+    /**
+     * The most time to wait before the first reconnect attempt, in milliseconds, doubled for each attempt up to
+     * {@link #maxReconnectDelay(long)}. The actual wait is picked at random below it. Defaults to 100.
+     */
+    public JSR356SwaggerSocketClientImpl reconnectDelay(final long reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+        return this;
+    }
+
+    public void setReconnectDelay(final long reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     * Defaults to 10 seconds.
+     */
+    public JSR356SwaggerSocketClientImpl maxReconnectDelay(final long maxReconnectDelay) {
+        this.maxReconnectDelay = maxReconnectDelay;
+        return this;
+    }
+
+    public void setMaxReconnectDelay(final long maxReconnectDelay) {
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+
+    /**
+     * The number of requests accepted while reconnecting, sent once reconnected. Defaults to 1024.
+     */
+    public JSR356SwaggerSocketClientImpl reconnectBufferSize(final int reconnectBufferSize) {
+        this.reconnectBufferSize = reconnectBufferSize;
+        return this;
+    }
+
+    public void setReconnectBufferSize(final int reconnectBufferSize) {
+        this.reconnectBufferSize = reconnectBufferSize;
+    }
+
+    private static ObjectMapper configure(final ObjectMapper mapper) {
+        mapper.getDeserializationConfig().without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        mapper.getSerializationConfig().without(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+        mapper.getSerializationConfig().withSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.configure(SerializationFeature.WRITE_DATE_KEYS_AS_TIMESTAMPS, false);
+        return mapper;
     }
 
     @OnOpen
     public void onOpen(final Session session) {
         LOG.debug("JSR356 Swagger Socket Session: Connection Established, Performing Handshake...");
         this.session = session;
+        outbound = new OutboundQueue(session.getAsyncRemote());
         performHandshake();
         LOG.debug("JSR356 Swagger Socket Session: OPEN");
     }
@@ -95,10 +237,46 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
         }
     }
 
+    @OnMessage
+    public void onMessage(final byte[] message) throws IOException {
+        final ObjectMapper mapper = frameMapper;
+        if (mapper == null) {
+            LOG.warn("JSR356 Swagger Socket: Ignoring Binary Message Received on a JSON Connection");
+            return;
+        }
+
+        // The top-level key tells the frame type, same as the prefix check of the text frames.
+        final JsonParser parser = mapper.getFactory().createParser(message);
+        try {
+            String name = null;
+            if (parser.nextToken() == JsonToken.START_OBJECT && parser.nextToken() == JsonToken.FIELD_NAME) {
+                name = parser.getCurrentName();
+            }
+
+            if ("heartbeat".equals(name)) {
+                return;
+            }
+            else if ("status".equals(name)) {
+                handleStatus(mapper.readValue(message, StatusMessage.class));
+            }
+            else {
+                handleResponses(mapper.readValue(message, ResponseMessage.class));
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
     @OnClose
     public void onClose(final Session session) {
         LOG.debug("JSR356 Swagger Socket: Close Event Received");
 
+        final boolean lost = isConnected && !closing;
+        if (lost && reconnectAttempts > 0) {
+            // before isConnected turns false, so that the connection never looks closed for good
+            buffered.set(0);
+            reconnecting = true;
+        }
         if(isConnected) {
             try {
                 session.close();
@@ -106,14 +284,221 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
                 LOG.error("Error Closing JSR356 Swagger Socket Session!", e);
             } finally {
                 this.session = null;
+                outbound = null;
                 isConnected = false;
                 identity = null;
+                frameMapper = null;
+                chunked = false;
+                chunks.clear();
+                rawJson = false;
+                clearCredits();
+                // kept in the pending table, sent again by a reconnect
+                awaitingCredit.clear();
             }
         }
 
+        if (lost && reconnectAttempts > 0) {
+            startReconnect();
+        } else if (!reconnecting) {
+            // their responses won't come on a new session
+            failPending("Swagger Socket Connection Closed");
+        }
+
         LOG.debug("JSR356 Swagger Socket Session CLOSED");
     }
 
+    private void failPending(final String reason) {
+        final List<ResponseFuture<?>> failed = messages.removeAll();
+        for (final ResponseFuture<?> future : failed) {
+            future.completeExceptionally(new JSR356SwaggerSocketException(reason, 503, null));
+        }
+        if (!failed.isEmpty()) {
+            LOG.warn("JSR356 Swagger Socket: {} Request(s) Failed: {}", failed.size(), reason);
+        }
+    }
+
+    /**
+     * Keep the idempotent requests and the ones not written yet for a new connection, fail the others which may have
+     * been processed.
+     */
+    private void startReconnect() {
+        int failed = 0;
+        for (final ResponseFuture<?> future : messages.list()) {
+            if (future.request.idempotent()) {
+                future.unclaim();
+            } else if (future.isClaimed() && messages.remove(future.uuid) != null) {
+                future.completeExceptionally(new JSR356SwaggerSocketException("Swagger Socket Connection Lost", 503, null));
+                failed++;
+            }
+        }
+        LOG.warn("JSR356 Swagger Socket: Connection Lost, Reconnecting, {} Request(s) Failed", failed);
+
+        final Thread thread = new Thread(this::reconnect, "SwaggerSocket-Reconnect");
+        thread.setDaemon(true);
+        reconnector = thread;
+        thread.start();
+    }
+
+    private void reconnect() {
+        long ceiling = Math.max(1, reconnectDelay);
+        for (int attempt = 1; attempt <= reconnectAttempts; attempt++) {
+            // full jitter, so that the clients dropped together don't come back together
+            final long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+            ceiling = Math.min(ceiling * 2, Math.max(ceiling, maxReconnectDelay));
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException e) {
+                break;
+            }
+            if (closing || isConnected || !reconnecting) {
+                // closed or opened again meanwhile
+                return;
+            }
+            if (reopen()) {
+                LOG.info("JSR356 Swagger Socket: Reconnected After {} Attempt(s)", attempt);
+                reconnecting = false;
+                replay();
+                return;
+            }
+            LOG.warn("JSR356 Swagger Socket: Reconnect Attempt {} Failed", attempt);
+        }
+        // a close() ends the attempts and fails the pending requests itself
+        if (reconnecting && !closing) {
+            reconnecting = false;
+            failPending("Swagger Socket Connection Lost, Unable to Reconnect");
+        }
+    }
+
+    /**
+     * Open a new session with the handshake of the lost one.
+     *
+     * @return true once the server answered the handshake
+     */
+    private boolean reopen() {
+        boolean attempted = false;
+        try {
+            reentrantLock.lock();
+
+            if (closing || !reconnecting) {
+                return false;
+            }
+            attempted = true;
+            connectionOpenLatch = new CountDownLatch(1);
+            session = webSocketContainer.connectToServer(this, uri);
+            connectionOpenLatch.await(OPEN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (isConnected) {
+                return true;
+            }
+        } catch (final DeploymentException e) {
+            LOG.debug("JSR356 Swagger Socket: Unable to Reconnect", e);
+        } catch (final IOException e) {
+            LOG.debug("JSR356 Swagger Socket: Unable to Reconnect", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (attempted && !isConnected) {
+                // refused or not answered handshake
+                final Session stray = session;
+                session = null;
+                outbound = null;
+                if (stray != null) {
+                    try {
+                        stray.close();
+                    } catch (final IOException e) {
+                        LOG.debug("JSR356 Swagger Socket: Error Closing Session", e);
+                    }
+                }
+            }
+            reentrantLock.unlock();
+        }
+        return false;
+    }
+
+    /**
+     * Send the requests kept or buffered while reconnecting, in turns when the server limits them.
+     */
+    private void replay() {
+        final List<ResponseFuture<?>> pending = new ArrayList<ResponseFuture<?>>();
+        for (final ResponseFuture<?> future : messages.list()) {
+            if (future.claim()) {
+                pending.add(future);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        LOG.info("JSR356 Swagger Socket: Sending {} Request(s) on the New Connection", pending.size());
+
+        if (credits != null) {
+            for (final ResponseFuture<?> future : pending) {
+                future.unclaim();
+            }
+            awaitingCredit.addAll(pending);
+            sendCredited();
+            return;
+        }
+        final List<Request> requests = new ArrayList<Request>(pending.size());
+        final List<String> uuids = new ArrayList<String>(pending.size());
+        for (final ResponseFuture<?> future : pending) {
+            requests.add(future.request);
+            uuids.add(future.uuid);
+        }
+        try {
+            final OutboundQueue out = outbound;
+            if (out == null) {
+                throw new IOException("Connection Lost Again");
+            }
+            writeRequests(out, requests, uuids);
+        } catch (final IOException e) {
+            failRequests(uuids, e);
+        }
+    }
+
+    /**
+     * Write the requests waiting for a credit, as many as there are credits available. Called after queueing
+     * requests and after returning a credit, so it never waits: the requests left are written by a later call.
+     */
+    private void sendCredited() {
+        final Semaphore c = credits;
+        final OutboundQueue out = outbound;
+        if (c == null || out == null || !isConnected) {
+            return;
+        }
+        final List<Request> requests = new ArrayList<Request>();
+        final List<String> uuids = new ArrayList<String>();
+        // a single thread takes credits at a time, so that a credit returned meanwhile is never missed
+        synchronized (awaitingCredit) {
+            ResponseFuture<?> next;
+            while ((next = awaitingCredit.peek()) != null) {
+                if (next.isDone() || next.isClaimed()) {
+                    // cancelled, expired or already written by a reconnect
+                    awaitingCredit.poll();
+                    continue;
+                }
+                if (!c.tryAcquire()) {
+                    break;
+                }
+                awaitingCredit.poll();
+                // checked again once claimed, a cancel seeing it unclaimed doesn't tell the server
+                if (!next.claim() || next.isDone()) {
+                    c.release();
+                    continue;
+                }
+                creditHolders.add(next.uuid);
+                requests.add(next.request);
+                uuids.add(next.uuid);
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        try {
+            writeRequests(out, requests, uuids);
+        } catch (final IOException e) {
+            failRequests(uuids, e);
+        }
+    }
+
     @OnError
     public void onError(final Throwable throwable) {
         LOG.error("JSR356 Swagger Socket ERROR: {}", throwable);
@@ -132,6 +517,8 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
             if (session != null) {
                 throw new JSR356SwaggerSocketException("Swagger Socket Connection Is Already Open!");
             }
+            closing = false;
+            reconnecting = false;
 
             handshake = new Handshake.Builder()
                     .queryString(request.getQueryString())
@@ -145,10 +532,11 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
             connectionOpenLatch = new CountDownLatch(1);
 
             final String swaggerSocketUrl = request.getPath() + "?SwaggerSocket=1.0";
-            session = webSocketContainer.connectToServer(this, URI.create(swaggerSocketUrl));
+            uri = URI.create(swaggerSocketUrl);
+            session = webSocketContainer.connectToServer(this, uri);
 
             try {
-                connectionOpenLatch.await(30, TimeUnit.SECONDS);
+                connectionOpenLatch.await(OPEN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
             }
             catch (final InterruptedException e) {
                 if(session != null){
@@ -172,6 +560,18 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
         return isConnected;
     }
 
+    /**
+     * @return true while a lost connection is being opened again
+     */
+    public boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    @Override
+    public int getPendingRequestCount() {
+        return messages.size();
+    }
+
     @Override
     public Response send(final Request request){
         final List<Request> requests = new ArrayList<Request>();
@@ -200,7 +600,6 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
             for(final Future<Response> resultLatches : resultList){
 	            final Response response = resultLatches.get();
                 responses.add(response);
-	            messages.remove(response.getUuid());
             }
 
             return responses;
@@ -212,7 +611,7 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
 
     @Override
     public List<Future<Response>> sendAsync(final List<Request> requests){
-        return sendRequests(requests, Response.class);
+        return new ArrayList<Future<Response>>(sendRequests(requests, Response.class));
     }
 
     @Override
@@ -248,70 +647,200 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
     @Override
     public <T> List<Future<T>> sendAsync(final List<Request> requests, final Class<T> resultClass) {
         serializeRequestBodies(requests);
-        return sendRequests(requests, resultClass);
+        return new ArrayList<Future<T>>(sendRequests(requests, resultClass));
     }
 
-    private <T> List<Future<T>> sendRequests(final List<Request> requests, final Class<T> resultClass){
-        final List<Future<T>> resultList = new ArrayList<Future<T>>();
+    @Override
+    public CompletionStage<Response> sendAsyncStage(final Request request) {
+        final List<Request> requests = new ArrayList<Request>();
+        requests.add(request);
+        return sendRequests(requests, Response.class).get(0);
+    }
 
-        try {
-            reentrantLock.lock();
+    @Override
+    public CompletionStage<List<Response>> sendAsyncStage(final List<Request> requests) {
+        return allOf(sendRequests(requests, Response.class));
+    }
 
-            final Request[] requestsArray = new Request[requests.size()];
-            requests.toArray(requestsArray);
+    @Override
+    public <T> CompletionStage<T> sendAsyncStage(final Request request, final Class<T> resultClass) {
+        final List<Request> requests = new ArrayList<Request>();
+        requests.add(request);
+        serializeRequestBodies(requests);
+        return sendRequests(requests, resultClass).get(0);
+    }
 
-            final RequestMessage requestMessage = new RequestMessage.Builder()
-                    .requests(requestsArray)
-                    .identity(identity)
-                    .build();
+    @Override
+    public <T> CompletionStage<List<T>> sendAsyncStage(final List<Request> requests, final Class<T> resultClass) {
+        serializeRequestBodies(requests);
+        return allOf(sendRequests(requests, resultClass));
+    }
 
-            for(final Request thisRequest : requestMessage.getRequests()){
-                final String uuid = UUID.randomUUID().toString();
-                thisRequest.setUuid(uuid);
+    /**
+     * The results in the order of the futures, once all of them are complete.
+     */
+    private static <T> CompletionStage<List<T>> allOf(final List<ResponseFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+            final List<T> results = new ArrayList<T>(futures.size());
+            for (final ResponseFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
 
-                final FutureCountDownLatch<T> result;
+    /**
+     * Register the requests and write them, or queue them until the server grants enough credits or the connection
+     * is open again. Never waits, so it may be called from a stage completed on the thread reading the WebSocket.
+     */
+    private <T> List<ResponseFuture<T>> sendRequests(final List<Request> requests, final Class<T> resultClass){
+        final List<ResponseFuture<T>> resultList = new ArrayList<ResponseFuture<T>>();
+        final List<String> uuids = new ArrayList<String>(requests.size());
+        boolean queued = false;
+        boolean buffering = false;
 
-                if(resultClass == Response.class){
-                    result = new FutureCountDownLatch<T>();
+        try {
+            if (!isConnected) {
+                if (!reconnecting) {
+                    throw new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s): Connection is Not Open!");
                 }
-                else {
-                    result = new FutureCountDownLatchWithAutoDeserialize<T>(resultClass);
+                if (buffered.addAndGet(requests.size()) > reconnectBufferSize) {
+                    buffered.addAndGet(-requests.size());
+                    throw new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s): Reconnecting, Too Many Requests Waiting", 503, null);
                 }
+                buffering = true;
+            }
+
+            for(final Request thisRequest : requests){
+                final String uuid = UUID.randomUUID().toString();
+                thisRequest.setUuid(uuid);
 
-                messages.put(uuid, result);
+                final ResponseFuture<T> result = new ResponseFuture<T>(thisRequest, resultClass);
+                messages.add(uuid, result, maxPendingRequests, requestTimeout);
                 resultList.add(result);
+                uuids.add(uuid);
             }
 
-            final String requestJson = objectMapper.writeValueAsString(requestMessage);
-            session.getBasicRemote().sendText(requestJson);
+            if (buffering && reconnecting) {
+                // sent once reconnected
+                queued = true;
+                return resultList;
+            }
+
+            final OutboundQueue out = outbound;
+            if (!isConnected || out == null) {
+                throw new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s): Connection is Not Open!");
+            }
+            if (credits != null) {
+                // written by this thread or by the one returning the credits they wait for
+                awaitingCredit.addAll(resultList);
+                queued = true;
+                sendCredited();
+                return resultList;
+            }
+
+            // written here unless the requests were sent by a reconnect meanwhile
+            final List<Request> unsent = new ArrayList<Request>(requests.size());
+            final List<String> unsentUuids = new ArrayList<String>(requests.size());
+            for (final ResponseFuture<T> result : resultList) {
+                if (result.claim()) {
+                    unsent.add(result.request);
+                    unsentUuids.add(result.uuid);
+                }
+            }
+            if (!unsent.isEmpty()) {
+                writeRequests(out, unsent, unsentUuids);
+            }
+            queued = true;
         } catch (final IOException e) {
             throw new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s)", e);
         } finally {
-            reentrantLock.unlock();
+            if (!queued) {
+                for (final String uuid : uuids) {
+                    messages.remove(uuid);
+                }
+                if (buffering) {
+                    buffered.addAndGet(-requests.size());
+                }
+            }
         }
 
         return resultList;
     }
 
+    /**
+     * Queue the frame of requests already in the pending table, which fail if it can't be written.
+     */
+    private void writeRequests(final OutboundQueue out, final List<Request> requests, final List<String> uuids) throws IOException {
+        final Request[] requestsArray = new Request[requests.size()];
+        requests.toArray(requestsArray);
+
+        final RequestMessage requestMessage = new RequestMessage.Builder()
+                .requests(requestsArray)
+                .identity(identity)
+                .build();
+
+        sendFrame(out, requestMessage, new SendHandler() {
+            @Override
+            public void onResult(final SendResult result) {
+                if (!result.isOK()) {
+                    failRequests(uuids, result.getException());
+                }
+            }
+        });
+    }
+
+    /**
+     * Fail the requests whose frame couldn't be written.
+     */
+    private void failRequests(final List<String> uuids, final Throwable cause) {
+        LOG.error("JSR356 Swagger Socket: Error Sending {} Request(s)", uuids.size(), cause);
+        for (final String uuid : uuids) {
+            returnCredit(uuid);
+            final ResponseFuture<?> kept = reconnecting ? messages.get(uuid) : null;
+            if (kept != null && kept.request.idempotent()) {
+                // sent again once reconnected
+                kept.unclaim();
+                continue;
+            }
+            final ResponseFuture<?> future = messages.remove(uuid);
+            if (future != null) {
+                future.completeExceptionally(new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s)", cause));
+            }
+        }
+    }
+
     private void serializeRequestBodies(final List<Request> requests){
         for (final Request request : requests) {
             final Object messageBody = request.getMessageBody();
 
-            if (!(messageBody instanceof String)) {
-                try {
+            if (messageBody instanceof String || messageBody instanceof JsonBody) {
+                continue;
+            }
+            final String format = request.getDataFormat();
+            try {
+                if (rawJson && format != null && format.contains("json")) {
+                    // embedded as a JSON value of the frame, not as an escaped string
+                    request.setMessageBody(objectMapper.valueToTree(messageBody));
+                } else {
                     request.setMessageBody(objectMapper.writeValueAsString(messageBody));
-                } catch (JsonProcessingException e) {
-                    throw new JSR356SwaggerSocketException("Error Serializing Swagger Socket Request(s)", e);
                 }
+            } catch (IllegalArgumentException e) {
+                throw new JSR356SwaggerSocketException("Error Serializing Swagger Socket Request(s)", e);
+            } catch (JsonProcessingException e) {
+                throw new JSR356SwaggerSocketException("Error Serializing Swagger Socket Request(s)", e);
             }
         }
     }
 
     private <T> T deserializeResponse(final Response response, final Class<T> resultClass){
-        final String responseBody = (String) response.getMessageBody();
+        final JsonBody rawBody = response.getRawMessageBody();
 
         try {
-            return objectMapper.readValue(responseBody, resultClass);
+            if (rawBody != null) {
+                return rawBody.bind(objectMapper, resultClass);
+            }
+            return objectMapper.readValue((String) response.getMessageBody(), resultClass);
         } catch (final IOException e) {
             throw new JSR356SwaggerSocketException("Error Deserializing Swagger Socket Response(s)", e);
         }
@@ -325,12 +854,32 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
 
         try {
             reentrantLock.lock();
-
-            if(isConnected) {
-                final String closeJson = objectMapper.writeValueAsString(closeMessage);
-                session.getBasicRemote().sendText(closeJson);
+            closing = true;
+
+            final OutboundQueue out = outbound;
+            if(isConnected && out != null) {
+                // the close frame goes after the queued ones, wait for it before closing the session
+                final CountDownLatch written = new CountDownLatch(1);
+                sendFrame(out, closeMessage, new SendHandler() {
+                    @Override
+                    public void onResult(final SendResult result) {
+                        written.countDown();
+                    }
+                });
+                if (!written.await(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    LOG.warn("JSR356 Swagger Socket: Timed Out Sending the Close Message");
+                }
                 onClose(session);
             }
+            else if (reconnecting) {
+                reconnecting = false;
+                final Thread r = reconnector;
+                if (r != null) {
+                    // waiting for its next attempt
+                    r.interrupt();
+                }
+                failPending("Swagger Socket Connection Closed");
+            }
             else {
                 throw new JSR356SwaggerSocketException("Error Closing Swagger Socket Connection: Connection is Not Open!");
             }
@@ -350,30 +899,137 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
         }
         else {
             identity = statusMessage.getIdentity();
+            final Integer granted = statusMessage.getCredits();
+            if (granted != null && granted > 0) {
+                credits = new Semaphore(granted);
+            }
+            chunked = statusMessage.getChunkSize() != null;
+            rawJson = Boolean.TRUE.equals(statusMessage.getRawJson());
+            if (DataFormat.isBinary(statusMessage.getDataFormat())) {
+                frameMapper = configure(DataFormat.newObjectMapper(statusMessage.getDataFormat()));
+            }
             isConnected = true;
             connectionOpenLatch.countDown();
         }
     }
 
     private void handleResponses(final String responses) throws IOException {
-        final ResponseMessage responseMessage = objectMapper.readValue(responses, ResponseMessage.class);
+        handleResponses(objectMapper.readValue(responses, ResponseMessage.class));
+    }
+
+    private void handleResponses(final ResponseMessage responseMessage) {
         final List<Response> responseMessageList = responseMessage.getResponses();
 
         for(int i = 0; i < responseMessageList.size(); i++){
-            final Response thisResponse = responseMessageList.get(i);
-            final FutureCountDownLatch<Response> responseLatch = messages.get(thisResponse.getUuid());
+            Response thisResponse = responseMessageList.get(i);
+            if (thisResponse.isLast()) {
+                // a response holding a credit ends with last="true", the frames before it keep the credit
+                returnCredit(thisResponse.getUuid());
+            }
+            if (chunked) {
+                thisResponse = reassemble(thisResponse);
+                if (thisResponse == null) {
+                    continue;
+                }
+            }
+            final ResponseFuture<?> future = messages.remove(thisResponse.getUuid());
 
-            if(responseLatch instanceof FutureCountDownLatchWithAutoDeserialize){
-                ((FutureCountDownLatchWithAutoDeserialize)responseLatch).setResponse(thisResponse);
+            if(future == null){
+                // cancelled meanwhile
+                LOG.debug("JSR356 Swagger Socket: Dropping Response of Request {}", thisResponse.getUuid());
+                continue;
             }
-            else {
-                responseLatch.set(thisResponse);
+
+            future.respond(thisResponse);
+        }
+    }
+
+    /**
+     * Gather the chunks of a response body.
+     *
+     * @return the response with the whole body once its last chunk is received, null before
+     */
+    private Response reassemble(final Response chunk) {
+        if (!messages.contains(chunk.getUuid())) {
+            // cancelled, nothing to keep
+            chunks.remove(chunk.getUuid());
+            return chunk;
+        }
+        final Object body = chunk.getMessageBody();
+        Chunks c = chunks.get(chunk.getUuid());
+        if (!chunk.isLast()) {
+            if (c == null) {
+                c = new Chunks(chunk);
+                chunks.put(chunk.getUuid(), c);
             }
+            if (body != null) {
+                c.body.append(body);
+            }
+            return null;
+        }
+        if (c == null) {
+            return chunk;
+        }
+        chunks.remove(chunk.getUuid());
+        if (chunk.getStatusCode() >= 400) {
+            // the response failed after some chunks were written, its error replaces them
+            return chunk;
+        }
+        if (body != null) {
+            c.body.append(body);
+        }
+        // the first chunk carries the headers, the last one may not
+        c.first.setMessageBody(c.body.toString());
+        c.first.setLast(true);
+        return c.first;
+    }
+
+    private static final class Chunks {
+        private final Response first;
+        private final StringBuilder body = new StringBuilder();
+
+        private Chunks(final Response first) {
+            this.first = first;
         }
     }
 
     private void handleStatus(final String status) throws IOException {
-        LOG.error("JSR356 Swagger Socket Status ERROR: {}", status);
+        handleStatus(objectMapper.readValue(status, StatusMessage.class));
+    }
+
+    private void handleStatus(final StatusMessage status) {
+        final int statusCode = status.getStatus().getStatusCode();
+        final ResponseFuture<?> future = statusCode >= 400 ? messages.remove(status.getIdentity()) : null;
+        if (future != null) {
+            // the error of a single request, 429 when the server had no credit left for it
+            LOG.warn("JSR356 Swagger Socket Request {} Rejected: {}", status.getIdentity(), statusCode + " " + status.getStatus().getReasonPhrase());
+            returnCredit(status.getIdentity());
+            chunks.remove(status.getIdentity());
+            if (future.resultClass == Response.class) {
+                future.respond(new Response.Builder()
+                        .status(statusCode, status.getStatus().getReasonPhrase())
+                        .uuid(status.getIdentity())
+                        .build());
+            } else {
+                future.completeExceptionally(new JSR356SwaggerSocketException(
+                        "Swagger Socket Request Rejected: " + status.getStatus().getReasonPhrase(), statusCode, null));
+            }
+            return;
+        }
+        LOG.error("JSR356 Swagger Socket Status ERROR: {} {}", status.getStatus().getStatusCode(), status.getStatus().getReasonPhrase());
+    }
+
+    private void returnCredit(final String uuid) {
+        final Semaphore c = credits;
+        if (c != null && uuid != null && creditHolders.remove(uuid)) {
+            c.release();
+            sendCredited();
+        }
+    }
+
+    private void clearCredits() {
+        credits = null;
+        creditHolders.clear();
     }
 
     private void performHandshake() {
@@ -389,6 +1045,21 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
         }
     }
 
+    /**
+     * Queue a message as a binary frame in the negotiated data format, or as JSON text. The message is serialized on
+     * the calling thread.
+     *
+     * @param handler told when the frame is written or failed, may be null
+     */
+    private void sendFrame(final OutboundQueue out, final Object message, final SendHandler handler) throws IOException {
+        final ObjectMapper mapper = frameMapper;
+        if (mapper != null) {
+            out.sendBinary(ByteBuffer.wrap(mapper.writeValueAsBytes(message)), handler);
+        } else {
+            out.sendText(objectMapper.writeValueAsString(message), handler);
+        }
+    }
+
     private boolean writeMessage(final String message) {
         try {
             session.getBasicRemote().sendText(message);
@@ -399,82 +1070,137 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
         return true;
     }
 
-    private class FutureCountDownLatch<T> implements Future<T> {
+    /**
+     * Hand a request removed at its deadline by the timer thread to the expiry executor.
+     */
+    private void expire(final ResponseFuture<?> future) {
+        try {
+            expiryExecutor.execute(future::expire);
+        } catch (final RejectedExecutionException e) {
+            LOG.debug("JSR356 Swagger Socket: Expiry Executor Rejected Request {}", future.uuid, e);
+            future.expire();
+        }
+    }
 
-        protected CountDownLatch countDownLatch = new CountDownLatch(1);
-        protected T result = null;
+    /**
+     * Tell the server to abandon the in-flight requests, their responses won't come.
+     */
+    private void cancelRequests(final List<String> uuids) {
+        final CancelMessage cancelMessage = new CancelMessage(new Cancel(identity, uuids));
 
-        @Override
-        public boolean cancel(boolean mayInterruptIfRunning) {
-            countDownLatch.countDown();
-            return true;
+        try {
+            final OutboundQueue out = outbound;
+            if (isConnected && out != null) {
+                sendFrame(out, cancelMessage, null);
+            }
+        } catch (final IOException e) {
+            throw new JSR356SwaggerSocketException("Error Cancelling Swagger Socket Request(s)", e);
         }
+    }
 
-        @Override
-        public boolean isCancelled() {
-            return countDownLatch.getCount() == 0 && result == null;
+    /**
+     * The pending result of a request, completed on the thread reading the WebSocket: the stages depending on it run
+     * there too unless added with an async method. As a {@link Future}, a cancelled request answers null and a typed
+     * request throws its {@link JSR356SwaggerSocketException} from {@code get}.
+     */
+    private class ResponseFuture<T> extends CompletableFuture<T> {
+
+        private final Request request;
+        private final String uuid;
+        private final Class<T> resultClass;
+        // set by the thread writing the request, so that a reconnect and a sender don't both send it
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private ResponseFuture(final Request request, final Class<T> resultClass) {
+            this.request = request;
+            this.uuid = request.getUuid();
+            this.resultClass = resultClass;
         }
 
-        @Override
-        public boolean isDone() {
-            return result != null;
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
         }
 
-        @Override
-        public T get() throws InterruptedException, ExecutionException {
-            countDownLatch.await();
-            return result;
+        private void unclaim() {
+            claimed.set(false);
         }
 
-        @Override
-        public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            countDownLatch.await(timeout, unit);
-            return result;
+        private boolean isClaimed() {
+            return claimed.get();
         }
 
-        public void set(final T result) {
-            this.result = result;
-            countDownLatch.countDown();
+        @SuppressWarnings("unchecked")
+        private void respond(final Response response) {
+            if (resultClass == Response.class) {
+                complete((T) response);
+                return;
+            }
+            try {
+                complete(deserializeResponse(response, resultClass));
+            } catch (final JSR356SwaggerSocketException e) {
+                completeExceptionally(e);
+            }
         }
 
-    }
-
-    private class FutureCountDownLatchWithAutoDeserialize<T> extends FutureCountDownLatch<T> {
-        private Class<T> targetClass;
-        private JSR356SwaggerSocketException deserializationException;
-
-        public FutureCountDownLatchWithAutoDeserialize(final Class<T> targetClass) {
-            this.targetClass = targetClass;
+        /**
+         * Fail the request removed at its deadline and tell the server to abandon it, run by the expiry executor.
+         */
+        private void expire() {
+            returnCredit(uuid);
+            chunks.remove(uuid);
+            completeExceptionally(new JSR356SwaggerSocketException("Swagger Socket Request Timed Out", 408, null));
+            if (!isClaimed()) {
+                // still waiting for a credit, never sent
+                return;
+            }
+            try {
+                cancelRequests(Collections.singletonList(uuid));
+            } catch (final JSR356SwaggerSocketException e) {
+                LOG.debug("JSR356 Swagger Socket: Unable to Cancel Request {}", uuid, e);
+            }
         }
 
         @Override
-        public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            countDownLatch.await(timeout, unit);
-
-            // If we had a deserialization exception it will be stored - rethrow it here.
-            if(deserializationException == null){
-                return result;
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            if (!super.cancel(mayInterruptIfRunning)) {
+                return false;
             }
-            else {
-                throw deserializationException;
+            messages.remove(uuid);
+            returnCredit(uuid);
+            if (isClaimed()) {
+                cancelRequests(Collections.singletonList(uuid));
             }
+            return true;
         }
 
-        public void setResponse(final Response response) {
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
             try {
-                this.result = deserializeResponse(response, targetClass);
-            }
-            catch(final JSR356SwaggerSocketException e){
-                // Since this will be done async, capture a deserialization
-                // exception and re-throw it when get() is called to make sure
-                // the caller is actually notified instead of it being swallowed
-                // by the message handling thread.
-                deserializationException = e;
+                return super.get();
+            } catch (final CancellationException e) {
+                return null;
+            } catch (final ExecutionException e) {
+                throw unwrap(e);
             }
+        }
 
-            countDownLatch.countDown();
+        @Override
+        public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return super.get(timeout, unit);
+            } catch (final CancellationException e) {
+                return null;
+            } catch (final ExecutionException e) {
+                throw unwrap(e);
+            }
         }
 
+        private ExecutionException unwrap(final ExecutionException e) {
+            if (resultClass != Response.class && e.getCause() instanceof JSR356SwaggerSocketException) {
+                throw (JSR356SwaggerSocketException) e.getCause();
+            }
+            return e;
+        }
     }
 
 }
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The frames waiting to be written to a session. Any thread adds frames without blocking. As the asynchronous remote
+ * allows a single write in progress, the frames are handed to it one at a time by the thread finding the queue idle,
+ * then by the thread completing the previous write.
+ */
+final class OutboundQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutboundQueue.class);
+
+    private final RemoteEndpoint.Async remote;
+    private final Queue<Frame> frames = new ConcurrentLinkedQueue<Frame>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    OutboundQueue(final RemoteEndpoint.Async remote) {
+        this.remote = remote;
+    }
+
+    /**
+     * Queue a text frame.
+     *
+     * @param handler told when the frame is written or failed, may be null
+     */
+    void sendText(final String text, final SendHandler handler) {
+        add(new Frame(text, null, handler));
+    }
+
+    /**
+     * Queue a binary frame.
+     *
+     * @param handler told when the frame is written or failed, may be null
+     */
+    void sendBinary(final ByteBuffer data, final SendHandler handler) {
+        add(new Frame(null, data, handler));
+    }
+
+    private void add(final Frame frame) {
+        frames.offer(frame);
+        drain();
+    }
+
+    private void drain() {
+        while (writing.compareAndSet(false, true)) {
+            final Frame frame = frames.poll();
+            if (frame == null) {
+                writing.set(false);
+                if (frames.isEmpty()) {
+                    return;
+                }
+                // added after the poll, by a thread which found the queue busy
+                continue;
+            }
+            if (!write(frame)) {
+                // the thread completing the write carries on
+                return;
+            }
+            writing.set(false);
+        }
+    }
+
+    /**
+     * Hand a frame to the remote. Of this method and the completion of the write, the one finishing last releases the
+     * queue, so a remote completing on the calling thread doesn't recurse once per queued frame.
+     *
+     * @return true if the write is already complete
+     */
+    private boolean write(final Frame frame) {
+        final SendHandler done = new SendHandler() {
+            @Override
+            public void onResult(final SendResult result) {
+                frame.complete(result);
+                if (frame.parties.decrementAndGet() == 0) {
+                    writing.set(false);
+                    drain();
+                }
+            }
+        };
+        try {
+            if (frame.text != null) {
+                remote.sendText(frame.text, done);
+            } else {
+                remote.sendBinary(frame.binary, done);
+            }
+        } catch (final RuntimeException e) {
+            // closed session, the handler won't be called
+            frame.parties.decrementAndGet();
+            frame.complete(new SendResult(e));
+        }
+        return frame.parties.decrementAndGet() == 0;
+    }
+
+    private static final class Frame {
+        private final String text;
+        private final ByteBuffer binary;
+        private final SendHandler handler;
+        // the write call and its completion
+        private final AtomicInteger parties = new AtomicInteger(2);
+
+        private Frame(final String text, final ByteBuffer binary, final SendHandler handler) {
+            this.text = text;
+            this.binary = binary;
+            this.handler = handler;
+        }
+
+        private void complete(final SendResult result) {
+            if (!result.isOK()) {
+                LOG.debug("JSR356 Swagger Socket: Error Writing Frame", result.getException());
+            }
+            if (handler == null) {
+                return;
+            }
+            try {
+                handler.onResult(result);
+            } catch (final RuntimeException e) {
+                LOG.warn("JSR356 Swagger Socket: Send Handler Failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client.impl;
+
+import io.swagger.swaggersocket.java.jsr356.client.exception.JSR356SwaggerSocketException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The requests waiting for their response, by uuid. The table is bounded and each request has a deadline, swept by a
+ * {@link TimerWheel}: whatever happens to a request, it leaves the table once.
+ */
+final class PendingRequests<F> {
+
+    interface Expiry<F> {
+        /**
+         * Called on the timer thread for a request removed at its deadline, must be short.
+         */
+        void expired(String uuid, F future);
+    }
+
+    private final ConcurrentMap<String, Entry<F>> entries = new ConcurrentHashMap<String, Entry<F>>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final TimerWheel wheel;
+    private final Expiry<F> expiry;
+
+    PendingRequests(final TimerWheel wheel, final Expiry<F> expiry) {
+        this.wheel = wheel;
+        this.expiry = expiry;
+    }
+
+    /**
+     * Add a request.
+     *
+     * @param capacity      the number of pending requests allowed
+     * @param timeoutMillis the time left to the request, 0 for none
+     * @throws JSR356SwaggerSocketException if the table is full
+     */
+    void add(final String uuid, final F future, final int capacity, final long timeoutMillis) {
+        int n;
+        do {
+            n = size.get();
+            if (n >= capacity) {
+                throw new JSR356SwaggerSocketException("Too Many Pending Swagger Socket Requests: " + n, 503, null);
+            }
+        } while (!size.compareAndSet(n, n + 1));
+
+        final Entry<F> entry = new Entry<F>(future);
+        entries.put(uuid, entry);
+        if (timeoutMillis > 0) {
+            entry.timeout = wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    final F expired = remove(uuid);
+                    if (expired != null) {
+                        expiry.expired(uuid, expired);
+                    }
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the request or null if it already left the table
+     */
+    F remove(final String uuid) {
+        final Entry<F> entry = uuid == null ? null : entries.remove(uuid);
+        if (entry == null) {
+            return null;
+        }
+        size.decrementAndGet();
+        final TimerWheel.Timeout timeout = entry.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        return entry.future;
+    }
+
+    /**
+     * Empty the table.
+     *
+     * @return the requests removed
+     */
+    List<F> removeAll() {
+        final List<F> removed = new ArrayList<F>();
+        for (final String uuid : entries.keySet()) {
+            final F future = remove(uuid);
+            if (future != null) {
+                removed.add(future);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the request or null if it isn't in the table
+     */
+    F get(final String uuid) {
+        final Entry<F> entry = entries.get(uuid);
+        return entry == null ? null : entry.future;
+    }
+
+    /**
+     * The requests in the table, in no particular order.
+     */
+    List<F> list() {
+        final List<F> all = new ArrayList<F>(size.get());
+        for (final Entry<F> entry : entries.values()) {
+            all.add(entry.future);
+        }
+        return all;
+    }
+
+    boolean contains(final String uuid) {
+        return entries.containsKey(uuid);
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    private static final class Entry<F> {
+        private final F future;
+        private volatile TimerWheel.Timeout timeout;
+
+        private Entry(final F future) {
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client.impl;
+
+import io.swagger.swaggersocket.java.jsr356.client.JSR356SwaggerSocketClient;
+import io.swagger.swaggersocket.java.jsr356.client.exception.JSR356SwaggerSocketException;
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.ContainerProvider;
+import javax.websocket.WebSocketContainer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A client spreading the requests over several SwaggerSocket connections to the same server, each with its own
+ * handshake. A call, including all the requests of a list, goes to one connection, picked by {@link Routing}.
+ * <p>
+ * Connections are opened as the load requires: a new one when the best connection already has requests pending,
+ * up to {@link #maxConnections(int)}. They are opened in the background, the calls going to the connections already
+ * open meanwhile; a call waits only when none of them is usable. Closed connections are dropped, connections idle for longer than
+ * {@link #idleTimeout(long)} are closed down to {@link #minConnections(int)}.
+ */
+public class PooledSwaggerSocketClient implements JSR356SwaggerSocketClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledSwaggerSocketClient.class);
+
+    public enum Routing {
+        /** the connection with the fewest requests waiting for their response */
+        LEAST_PENDING,
+        /** each connection in turn */
+        ROUND_ROBIN
+    }
+
+    private final WebSocketContainer webSocketContainer;
+    private final List<Member> members = new CopyOnWriteArrayList<Member>();
+    private final AtomicInteger next = new AtomicInteger();
+    // one connection opened at a time
+    private final ReentrantLock growLock = new ReentrantLock();
+    // true while a connection is being opened in the background
+    private final AtomicBoolean growing = new AtomicBoolean();
+
+    private volatile Routing routing = Routing.LEAST_PENDING;
+    private volatile int minConnections = 1;
+    private volatile int maxConnections = Runtime.getRuntime().availableProcessors();
+    private volatile long idleTimeout = 60000;
+    private volatile long requestTimeout = -1;
+    private volatile int maxPendingRequests = -1;
+
+    private volatile Request handshake;
+    // opens the connections and closes the idle ones off the callers' threads
+    private volatile ScheduledExecutorService background;
+
+    public PooledSwaggerSocketClient() {
+        this(ContainerProvider.getWebSocketContainer());
+    }
+
+    /**
+     * @param webSocketContainer the container opening the WebSocket sessions
+     */
+    public PooledSwaggerSocketClient(final WebSocketContainer webSocketContainer) {
+        this.webSocketContainer = webSocketContainer;
+    }
+
+    public PooledSwaggerSocketClient routing(final Routing routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    public void setRouting(final Routing routing) {
+        this.routing = routing;
+    }
+
+    /**
+     * The connections opened with the pool and kept when idle. Defaults to 1.
+     */
+    public PooledSwaggerSocketClient minConnections(final int minConnections) {
+        this.minConnections = minConnections;
+        return this;
+    }
+
+    public void setMinConnections(final int minConnections) {
+        this.minConnections = minConnections;
+    }
+
+    /**
+     * Defaults to the number of processors.
+     */
+    public PooledSwaggerSocketClient maxConnections(final int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public void setMaxConnections(final int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * How long a connection without any request stays open beyond the minimum, in milliseconds. Defaults to 60
+     * seconds, 0 keeps them open.
+     */
+    public PooledSwaggerSocketClient idleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @see JSR356SwaggerSocketClientImpl#requestTimeout(long)
+     */
+    public PooledSwaggerSocketClient requestTimeout(final long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    public void setRequestTimeout(final long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * @see JSR356SwaggerSocketClientImpl#maxPendingRequests(int), per connection
+     */
+    public PooledSwaggerSocketClient maxPendingRequests(final int maxPendingRequests) {
+        this.maxPendingRequests = maxPendingRequests;
+        return this;
+    }
+
+    public void setMaxPendingRequests(final int maxPendingRequests) {
+        this.maxPendingRequests = maxPendingRequests;
+    }
+
+    /**
+     * The number of open connections.
+     */
+    public int getConnectionCount() {
+        return members.size();
+    }
+
+    @Override
+    public void open(final String url) {
+        open(new Request.Builder().path(url).build());
+    }
+
+    @Override
+    public void open(final Request request) {
+        growLock.lock();
+        try {
+            if (handshake != null) {
+                throw new JSR356SwaggerSocketException("Swagger Socket Connection Is Already Open!");
+            }
+            handshake = request;
+            try {
+                for (int i = 0; i < Math.max(1, minConnections); i++) {
+                    members.add(connect());
+                }
+            } catch (final RuntimeException e) {
+                closeAll();
+                handshake = null;
+                throw e;
+            }
+
+            background = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "SwaggerSocket-Pool");
+                t.setDaemon(true);
+                return t;
+            });
+            final long idle = idleTimeout;
+            if (idle > 0) {
+                final long period = Math.max(idle / 2, 1000);
+                background.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        for (final Member m : members) {
+            if (m.client.isConnected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getPendingRequestCount() {
+        int pending = 0;
+        for (final Member m : members) {
+            pending += m.client.getPendingRequestCount();
+        }
+        return pending;
+    }
+
+    @Override
+    public Response send(final Request request) {
+        return route(c -> c.send(request));
+    }
+
+    @Override
+    public List<Response> send(final List<Request> requests) {
+        return route(c -> c.send(requests));
+    }
+
+    @Override
+    public <T> List<T> send(final List<Request> requests, final Class<T> resultClass) {
+        return route(c -> c.send(requests, resultClass));
+    }
+
+    @Override
+    public <T> T send(final Request request, final Class<T> resultClass) {
+        return route(c -> c.send(request, resultClass));
+    }
+
+    @Override
+    public Future<Response> sendAsync(final Request request) {
+        return route(c -> c.sendAsync(request));
+    }
+
+    @Override
+    public List<Future<Response>> sendAsync(final List<Request> requests) {
+        return route(c -> c.sendAsync(requests));
+    }
+
+    @Override
+    public <T> List<Future<T>> sendAsync(final List<Request> requests, final Class<T> resultClass) {
+        return route(c -> c.sendAsync(requests, resultClass));
+    }
+
+    @Override
+    public <T> Future<T> sendAsync(final Request request, final Class<T> resultClass) {
+        return route(c -> c.sendAsync(request, resultClass));
+    }
+
+    @Override
+    public void close() {
+        growLock.lock();
+        try {
+            if (handshake == null) {
+                throw new JSR356SwaggerSocketException("Error Closing Swagger Socket Connection: Connection is Not Open!");
+            }
+            handshake = null;
+            if (background != null) {
+                background.shutdownNow();
+                background = null;
+            }
+            closeAll();
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    private <R> R route(final Function<JSR356SwaggerSocketClient, R> call) {
+        final Member m = select();
+        try {
+            return call.apply(m.client);
+        } finally {
+            m.lastUsed = System.nanoTime();
+            m.users.decrementAndGet();
+        }
+    }
+
+    /**
+     * Pick a connection and count the caller as one of its users, so that it isn't evicted meanwhile. A busy
+     * connection has one more opened in the background, the caller waits for it only if no connection is usable.
+     */
+    private Member select() {
+        while (true) {
+            Member best = routing == Routing.ROUND_ROBIN ? nextInTurn() : leastPending();
+            if (best == null) {
+                best = grow(true);
+            } else if (best.client.getPendingRequestCount() > 0 && members.size() < maxConnections) {
+                growInBackground();
+            }
+            if (best == null) {
+                throw new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s): Connection is Not Open!");
+            }
+
+            best.users.incrementAndGet();
+            if (!best.evicted) {
+                return best;
+            }
+            best.users.decrementAndGet();
+        }
+    }
+
+    private Member leastPending() {
+        Member best = null;
+        int fewest = Integer.MAX_VALUE;
+        for (final Member m : members) {
+            if (!usable(m)) {
+                continue;
+            }
+            final int pending = m.client.getPendingRequestCount();
+            if (pending < fewest) {
+                best = m;
+                fewest = pending;
+            }
+        }
+        return best;
+    }
+
+    private Member nextInTurn() {
+        final Object[] all = members.toArray();
+        final int start = next.getAndIncrement();
+        for (int i = 0; i < all.length; i++) {
+            final Member m = (Member) all[((start + i) & Integer.MAX_VALUE) % all.length];
+            if (usable(m)) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop a closed connection, its pending requests already failed. A reconnecting one is skipped meanwhile.
+     */
+    private boolean usable(final Member m) {
+        if (m.evicted || m.client.isReconnecting()) {
+            return false;
+        }
+        if (!m.client.isConnected()) {
+            if (members.remove(m)) {
+                LOG.info("JSR356 Swagger Socket Pool: Dropping a Closed Connection");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Open one more connection on the background thread, unless one is being opened already.
+     */
+    private void growInBackground() {
+        final ScheduledExecutorService executor = background;
+        if (executor == null || !growing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    grow(false);
+                } finally {
+                    growing.set(false);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // closed meanwhile
+            growing.set(false);
+        }
+    }
+
+    /**
+     * Open one more connection.
+     *
+     * @param wait true to wait for another thread opening one, when no connection is usable
+     * @return the new connection or null if none was opened
+     */
+    private Member grow(final boolean wait) {
+        if (wait) {
+            growLock.lock();
+        } else if (!growLock.tryLock()) {
+            return null;
+        }
+        try {
+            if (handshake == null) {
+                return null;
+            }
+            if (wait) {
+                // opened by the thread holding the lock
+                final Member opened = leastPending();
+                if (opened != null) {
+                    return opened;
+                }
+            }
+            if (members.size() >= maxConnections) {
+                return null;
+            }
+            try {
+                final Member m = connect();
+                members.add(m);
+                return m;
+            } catch (final JSR356SwaggerSocketException e) {
+                if (wait) {
+                    throw e;
+                }
+                LOG.warn("JSR356 Swagger Socket Pool: Unable to Open a Connection", e);
+                return null;
+            }
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    private Member connect() {
+        final JSR356SwaggerSocketClientImpl client = new JSR356SwaggerSocketClientImpl(webSocketContainer);
+        if (requestTimeout >= 0) {
+            client.setRequestTimeout(requestTimeout);
+        }
+        if (maxPendingRequests > 0) {
+            client.setMaxPendingRequests(maxPendingRequests);
+        }
+        client.open(handshake);
+        if (!client.isConnected()) {
+            throw new JSR356SwaggerSocketException("Error Opening Swagger Socket Connection: Handshake Not Completed");
+        }
+        return new Member(client);
+    }
+
+    /**
+     * Close the connections unused for longer than the idle timeout, beyond the minimum.
+     */
+    private void evictIdle() {
+        final long idle = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        final long now = System.nanoTime();
+        for (final Member m : members) {
+            if (members.size() <= minConnections) {
+                return;
+            }
+            if (!usable(m) || now - m.lastUsed < idle || m.client.getPendingRequestCount() > 0) {
+                continue;
+            }
+            m.evicted = true;
+            if (m.users.get() > 0 || m.client.getPendingRequestCount() > 0) {
+                // picked meanwhile
+                m.evicted = false;
+                continue;
+            }
+            members.remove(m);
+            LOG.debug("JSR356 Swagger Socket Pool: Closing an Idle Connection");
+            closeQuietly(m);
+        }
+    }
+
+    private void closeAll() {
+        for (final Member m : members) {
+            m.evicted = true;
+            members.remove(m);
+            closeQuietly(m);
+        }
+    }
+
+    private static void closeQuietly(final Member m) {
+        try {
+            if (m.client.isConnected()) {
+                m.client.close();
+            }
+        } catch (final JSR356SwaggerSocketException e) {
+            LOG.debug("JSR356 Swagger Socket Pool: Error Closing a Connection", e);
+        }
+    }
+
+    private static final class Member {
+        private final JSR356SwaggerSocketClientImpl client;
+        // the callers routed to the connection and not returned yet
+        private final AtomicInteger users = new AtomicInteger();
+        private volatile long lastUsed = System.nanoTime();
+        private volatile boolean evicted;
+
+        private Member(final JSR356SwaggerSocketClientImpl client) {
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timer wheel: the tasks are spread over slots visited by a single daemon thread, so scheduling and
+ * cancelling cost the same however many tasks are pending. Tasks run late by up to a tick.
+ * <p>
+ * The thread parks until the tick of the earliest task and for as long as the wheel is empty. The tasks are run by
+ * the wheel thread and must be short.
+ */
+final class TimerWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+    private static final class Shared {
+        private static final TimerWheel INSTANCE = new TimerWheel(10, 512);
+    }
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final int mask;
+    // only touched by the wheel thread
+    private final List<Queue<Timeout>> slots;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<Timeout>();
+    private final Thread thread;
+    // the tick the wheel thread parks until, Long.MAX_VALUE while the wheel is empty
+    private volatile long wakeTick = Long.MAX_VALUE;
+
+    /**
+     * The wheel shared by the clients of this class loader.
+     */
+    static TimerWheel shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * @param tickMillis the precision of the wheel
+     * @param slots      the number of slots, rounded up to a power of two
+     */
+    TimerWheel(final long tickMillis, final int slots) {
+        final int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.slots = new ArrayList<Queue<Timeout>>(size);
+        for (int i = 0; i < size; i++) {
+            this.slots.add(new ArrayDeque<Timeout>());
+        }
+        this.startNanos = System.nanoTime();
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                turn();
+            }
+        }, "SwaggerSocket-Timer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Run a task after a delay, unless cancelled first.
+     */
+    Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final long due = System.nanoTime() - startNanos + unit.toNanos(delay);
+        final Timeout timeout = new Timeout(task, (due + tickNanos - 1) / tickNanos);
+        incoming.offer(timeout);
+        if (timeout.tick < wakeTick) {
+            // due before the wheel thread wakes up
+            LockSupport.unpark(thread);
+        }
+        return timeout;
+    }
+
+    private Queue<Timeout> slot(final long tick) {
+        return slots.get((int) (tick & mask));
+    }
+
+    private void turn() {
+        // the last tick visited
+        long tick = 0;
+        while (true) {
+            final long now = (System.nanoTime() - startNanos) / tickNanos;
+
+            Timeout t;
+            while ((t = incoming.poll()) != null) {
+                if (!t.isCancelled()) {
+                    slot(Math.max(t.tick, tick + 1)).add(t);
+                }
+            }
+
+            // the slots of the ticks elapsed, each one once at most
+            for (long k = Math.max(tick + 1, now - mask); k <= now; k++) {
+                final Iterator<Timeout> it = slot(k).iterator();
+                while (it.hasNext()) {
+                    t = it.next();
+                    if (t.isCancelled()) {
+                        it.remove();
+                    } else if (t.tick <= now) {
+                        it.remove();
+                        t.expire();
+                    }
+                }
+            }
+            tick = Math.max(tick, now);
+
+            final long next = nextTick(tick);
+            wakeTick = next;
+            if (!incoming.isEmpty()) {
+                // scheduled before wakeTick was published, it didn't unpark this thread
+                continue;
+            }
+            if (next == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                final long sleep = startNanos + next * tickNanos - System.nanoTime();
+                if (sleep > 0) {
+                    LockSupport.parkNanos(this, sleep);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the cancelled tasks on the way to the earliest one.
+     *
+     * @return the tick of the earliest task due within a turn of the wheel, the tick a turn later if they are all due
+     * after it, Long.MAX_VALUE if the wheel is empty
+     */
+    private long nextTick(final long tick) {
+        boolean pending = false;
+        for (long k = tick + 1; k <= tick + slots.size(); k++) {
+            final Iterator<Timeout> it = slot(k).iterator();
+            while (it.hasNext()) {
+                final Timeout t = it.next();
+                if (t.isCancelled()) {
+                    it.remove();
+                } else if (t.tick <= k) {
+                    return k;
+                } else {
+                    pending = true;
+                }
+            }
+        }
+        return pending ? tick + slots.size() : Long.MAX_VALUE;
+    }
+
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long tick;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Timeout(final Runnable task, final long tick) {
+            this.task = task;
+            this.tick = tick;
+        }
+
+        /**
+         * @return false if the task already ran or was cancelled
+         */
+        boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (final Throwable e) {
+                LOG.warn("JSR356 Swagger Socket: Timer Task Failed", e);
+            }
+        }
+    }
+}
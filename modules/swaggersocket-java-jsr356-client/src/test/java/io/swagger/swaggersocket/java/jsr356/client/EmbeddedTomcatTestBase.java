@@ -44,6 +44,13 @@ public class EmbeddedTomcatTestBase {
             serverSocket.close();
         }
 
+        startServer();
+    }
+
+    /**
+     * Start Tomcat on {@link #port}, again once {@link #stopServer()} closed it.
+     */
+    protected static void startServer() {
         try {
             tomcat = new Tomcat();
             tomcat.setPort(port);
@@ -83,9 +90,21 @@ public class EmbeddedTomcatTestBase {
 
     @AfterClass
     public static void stopTomcat() {
+        stopServer();
         try {
-            tomcat.stop();
             FileUtils.deleteDirectory(new File(String.format("tomcat.%d", port)));
+        } catch (final IOException e) {
+            throw new RuntimeException("Failed to Delete Embedded Tomcat Directory!");
+        }
+    }
+
+    /**
+     * Stop Tomcat, closing the WebSocket sessions, and release its port.
+     */
+    protected static void stopServer() {
+        try {
+            tomcat.stop();
+            tomcat.destroy();
         } catch (final Exception e) {
             throw new RuntimeException("Failed to Stop Embedded Tomcat!");
         }
@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client;
+
+import io.swagger.swaggersocket.java.jsr356.client.exception.JSR356SwaggerSocketException;
+import io.swagger.swaggersocket.java.jsr356.client.impl.JSR356SwaggerSocketClientImpl;
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stops and starts the embedded Tomcat under a client opening its lost connection again.
+ */
+public class JSR356SwaggerSocketClientReconnectTest extends EmbeddedTomcatTestBase {
+
+    private JSR356SwaggerSocketClientImpl client;
+
+    @Before
+    public void openClient() {
+        client = new JSR356SwaggerSocketClientImpl()
+                .reconnectAttempts(100)
+                .reconnectDelay(50)
+                .maxReconnectDelay(200);
+        client.open(String.format("ws://localhost:%d/parallel/test", port));
+    }
+
+    @After
+    public void closeClient() {
+        if (client.isConnected() || client.isReconnecting()) {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testIdempotentRequestIsSentAgainAndOtherFails() throws Exception {
+        final Future<Response> idempotent = client.sendAsync(new Request.Builder()
+                .path("/sleep")
+                .method("POST")
+                .body("1501")
+                .idempotent(true)
+                .build());
+        final Future<Response> other = client.sendAsync(new Request.Builder()
+                .path("/sleep")
+                .method("POST")
+                .body("1502")
+                .build());
+        awaitTrue("Requests Not Dispatched!", () -> TestResource.SLEEPING.contains("1501")
+                && TestResource.SLEEPING.contains("1502"));
+
+        stopServer();
+        try {
+            try {
+                other.get(5, TimeUnit.SECONDS);
+                fail("Non Idempotent Request Did Not Fail!");
+            } catch (final ExecutionException e) {
+                assertEquals("Unavailable Status Expected!", 503, ((JSR356SwaggerSocketException) e.getCause()).getStatus());
+            }
+            assertTrue("Client Not Reconnecting!", client.isReconnecting());
+        } finally {
+            startServer();
+        }
+
+        assertEquals("Sleep Text Doesn't Match!", "slept 1501", idempotent.get(10, TimeUnit.SECONDS).getMessageBody());
+        assertTrue("Client Not Connected!", client.isConnected());
+        assertEquals("Requests Still Pending!", 0, client.getPendingRequestCount());
+    }
+
+    @Test
+    public void testRequestsBeyondTheReconnectBufferFail() throws Exception {
+        client.reconnectBufferSize(2);
+
+        stopServer();
+        final Future<Response> first;
+        final Future<Response> second;
+        try {
+            awaitTrue("Client Not Reconnecting!", () -> client.isReconnecting() && !client.isConnected());
+            first = client.sendAsync(new Request.Builder().path("/echo").method("POST").body("buffered 1").build());
+            second = client.sendAsync(new Request.Builder().path("/echo").method("POST").body("buffered 2").build());
+            try {
+                client.sendAsync(new Request.Builder().path("/echo").method("POST").body("buffered 3").build());
+                fail("Request Beyond The Buffer Was Accepted!");
+            } catch (final JSR356SwaggerSocketException e) {
+                assertEquals("Unavailable Status Expected!", 503, e.getStatus());
+            }
+        } finally {
+            startServer();
+        }
+
+        assertEquals("Echo Text Doesn't Match!", "buffered 1", first.get(10, TimeUnit.SECONDS).getMessageBody());
+        assertEquals("Echo Text Doesn't Match!", "buffered 2", second.get(10, TimeUnit.SECONDS).getMessageBody());
+    }
+
+    @Test
+    public void testCloseWhileReconnectingEndsTheReconnectThread() throws Exception {
+        stopServer();
+        try {
+            awaitTrue("Client Not Reconnecting!", () -> client.isReconnecting() && !client.isConnected());
+            final Future<Response> buffered = client.sendAsync(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body("buffered")
+                    .build());
+
+            client.close();
+
+            assertFalse("Client Still Reconnecting!", client.isReconnecting());
+            try {
+                buffered.get(5, TimeUnit.SECONDS);
+                fail("Buffered Request Did Not Fail!");
+            } catch (final ExecutionException e) {
+                assertEquals("Unavailable Status Expected!", 503, ((JSR356SwaggerSocketException) e.getCause()).getStatus());
+            }
+            awaitTrue("Reconnect Thread Still Running!", () -> !reconnectThreadAlive());
+        } finally {
+            startServer();
+        }
+        Thread.sleep(500);
+        assertFalse("Client Reconnected After Close!", client.isConnected());
+    }
+
+    private static boolean reconnectThreadAlive() {
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("SwaggerSocket-Reconnect".equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void awaitTrue(final String message, final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
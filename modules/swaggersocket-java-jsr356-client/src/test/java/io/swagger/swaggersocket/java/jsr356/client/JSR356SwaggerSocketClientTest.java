@@ -15,18 +15,51 @@
  */
 package io.swagger.swaggersocket.java.jsr356.client;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.swaggersocket.java.jsr356.client.exception.JSR356SwaggerSocketException;
 import io.swagger.swaggersocket.java.jsr356.client.impl.JSR356SwaggerSocketClientImpl;
+import io.swagger.swaggersocket.java.jsr356.client.impl.PooledSwaggerSocketClient;
+import io.swagger.swaggersocket.protocol.DataFormat;
+import io.swagger.swaggersocket.protocol.Handshake;
+import io.swagger.swaggersocket.protocol.HandshakeMessage;
+import io.swagger.swaggersocket.protocol.JsonBody;
+import io.swagger.swaggersocket.protocol.QueryString;
 import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.RequestMessage;
 import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import io.swagger.swaggersocket.protocol.StatusMessage;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.websocket.ClientEndpoint;
+import javax.websocket.ContainerProvider;
+import javax.websocket.OnMessage;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.Assert.*;
 
@@ -62,6 +95,27 @@ public class JSR356SwaggerSocketClientTest extends EmbeddedTomcatTestBase {
         assertEquals("Echo Tex.get()t Doesn't Match!", "echo this...", response.get().getMessageBody());
     }
 
+    @Test
+    public void testQueryParameters(){
+        final Response response = jsr356SwaggerSocketClient.send(new Request.Builder()
+                .path("/parameters")
+                .method("GET")
+                .queryString(Arrays.asList(new QueryString("name", "swagger")))
+                .build());
+
+        assertEquals("Status Code Doesn't Match!", 200, response.getStatusCode());
+        assertEquals("Parameters Don't Match!", "swagger true", response.getMessageBody());
+
+        // without a query string of its own the request still has the parameters of the connection's URL
+        final Response noQuery = jsr356SwaggerSocketClient.send(new Request.Builder()
+                .path("/parameters")
+                .method("GET")
+                .build());
+
+        assertEquals("Status Code Doesn't Match!", 200, noQuery.getStatusCode());
+        assertEquals("Parameters Don't Match!", "none true", noQuery.getMessageBody());
+    }
+
     @Test
     public void testJSR356SwaggerSocketClientWithBatchCallToEchoService(){
         final List<Request> requests = new ArrayList<Request>();
@@ -95,6 +149,96 @@ public class JSR356SwaggerSocketClientTest extends EmbeddedTomcatTestBase {
         assertEquals("Echo Text Doesn't Match!", "echo this... 3", responses.get(2).getMessageBody());
     }
 
+    @Test
+    public void testBatchLargerThanGrantedCreditsIsSentInTurns(){
+        final JSR356SwaggerSocketClient creditedClient = new JSR356SwaggerSocketClientImpl();
+        creditedClient.open(String.format("ws://localhost:%d/credits/test", port));
+
+        try {
+            // the credits servlet grants 8 credits
+            final List<Request> requests = new ArrayList<Request>();
+            for (int i = 0; i < 20; i++) {
+                requests.add(new Request.Builder()
+                        .path("/echo")
+                        .method("POST")
+                        .body("echo this... " + i)
+                        .build());
+            }
+
+            final List<Response> responses = creditedClient.send(requests);
+
+            assertEquals("Response Count Doesn't Match!", 20, responses.size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals("Echo Text Doesn't Match!", "echo this... " + i, responses.get(i).getMessageBody());
+            }
+        } finally {
+            creditedClient.close();
+        }
+    }
+
+    @Test
+    public void testChunkedResponsesHoldTheirCreditsUntilTheLastChunk(){
+        final JSR356SwaggerSocketClient creditedClient = new JSR356SwaggerSocketClientImpl();
+        creditedClient.open(String.format("ws://localhost:%d/credits/test", port));
+
+        try {
+            // the credits servlet grants 8 credits and sends bodies above 1024 bytes in chunks
+            TestResource.MAX_STREAMING.set(0);
+            final List<Request> requests = new ArrayList<Request>();
+            for (int i = 0; i < 20; i++) {
+                requests.add(new Request.Builder()
+                        .path("/stream")
+                        .method("POST")
+                        .body("3")
+                        .build());
+            }
+
+            final List<Response> responses = creditedClient.send(requests);
+
+            assertEquals("Response Count Doesn't Match!", 20, responses.size());
+            for (final Response response : responses) {
+                assertEquals("Status Code Doesn't Match!", 200, response.getStatusCode());
+                final String body = (String) response.getMessageBody();
+                assertEquals("Body Length Doesn't Match!", 4500, body.length());
+                assertEquals("Last Part Doesn't Match!", 'c', body.charAt(4499));
+            }
+            assertTrue("More Responses Streamed Than Credits Granted: " + TestResource.MAX_STREAMING.get(),
+                    TestResource.MAX_STREAMING.get() <= 8);
+        } finally {
+            creditedClient.close();
+        }
+    }
+
+    @Test
+    public void testAsyncSendDoesNotWaitForCredits() throws ExecutionException, InterruptedException {
+        final JSR356SwaggerSocketClient creditedClient = new JSR356SwaggerSocketClientImpl();
+        creditedClient.open(String.format("ws://localhost:%d/credits/test", port));
+
+        try {
+            // the credits servlet grants 8 credits, all taken by the sleeping requests
+            final List<Request> requests = new ArrayList<Request>();
+            for (int i = 0; i < 8; i++) {
+                requests.add(new Request.Builder().path("/sleep").method("POST").body("500").build());
+            }
+            final List<Future<Response>> sleeping = creditedClient.sendAsync(requests);
+
+            final long start = System.currentTimeMillis();
+            final Future<Response> echo = creditedClient.sendAsync(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body("echo this...")
+                    .build());
+            assertTrue("Sending Waited For A Credit!", System.currentTimeMillis() - start < 250);
+
+            assertEquals("Echo Text Doesn't Match!", "echo this...", echo.get().getMessageBody());
+            for (final Future<Response> slept : sleeping) {
+                assertEquals("Sleep Text Doesn't Match!", "slept 500", slept.get().getMessageBody());
+            }
+        } finally {
+            creditedClient.close();
+        }
+    }
+
     @Test
     public void testAsyncJSR356SwaggerSocketClientWithBatchCallToEchoService() throws ExecutionException, InterruptedException {
         final List<Request> requests = new ArrayList<Request>();
@@ -142,6 +286,33 @@ public class JSR356SwaggerSocketClientTest extends EmbeddedTomcatTestBase {
         assertEquals("Test Json Object Text Doesn't Match!", requestJsonObject.getTest(), responseJsonObject.getTest());
     }
 
+    @Test
+    public void testJsonResponseBodyIsEmbeddedAsJsonValue() throws IOException {
+        final JSR356SwaggerSocketClient rawJsonClient = new JSR356SwaggerSocketClientImpl();
+        rawJsonClient.open(String.format("ws://localhost:%d/rawjson/test", port));
+
+        try {
+            final TestJsonObject requestJsonObject = new TestJsonObject();
+            requestJsonObject.setTest("test \"json\" object");
+
+            final Response response = rawJsonClient.send(new Request.Builder()
+                    .path("/testJsonObject")
+                    .method("POST")
+                    .body(requestJsonObject)
+                    .build());
+
+            final JsonBody rawBody = response.getRawMessageBody();
+            assertNotNull("Json Body Expected!", rawBody);
+            final TestJsonObject responseJsonObject = rawBody.bind(new ObjectMapper(), TestJsonObject.class);
+            assertEquals("Test Json Object Text Doesn't Match!", requestJsonObject.getTest(), responseJsonObject.getTest());
+            // bound as any JSON value without the raw accessor
+            assertTrue("Map Body Expected!", response.getMessageBody() instanceof Map);
+            assertEquals("Test Json Object Text Doesn't Match!", requestJsonObject.getTest(), ((Map<?, ?>) response.getMessageBody()).get("test"));
+        } finally {
+            rawJsonClient.close();
+        }
+    }
+
     @Test
     public void testAsyncJSR356SwaggerSocketClientWithTestJsonObjectAndAutoDeserialize() throws ExecutionException, InterruptedException {
         final TestJsonObject requestJsonObject = new TestJsonObject();
@@ -226,6 +397,493 @@ public class JSR356SwaggerSocketClientTest extends EmbeddedTomcatTestBase {
         assertEquals("Test Json Object 1 Text Doesn't Match!", requestJsonObject1.getTest(), responseJsonObjects.get(0).get().getTest());
     }
 
+    @Test
+    public void testLargeBodyIsReassembledFromChunks(){
+        final JSR356SwaggerSocketClient chunkedClient = new JSR356SwaggerSocketClientImpl();
+        chunkedClient.open(String.format("ws://localhost:%d/chunked/test", port));
+
+        try {
+            // the chunked servlet splits bodies larger than 1024 bytes, the multi-byte characters straddle the chunk
+            // borders. The request itself stays below the 8 KB text frame limit of Tomcat.
+            final StringBuilder b = new StringBuilder();
+            for (int i = 0; b.length() < 3000; i++) {
+                b.append("chunk ").append(i).append(" \u00e9\u4e2d ");
+            }
+            final String body = b.toString();
+
+            final Response response = chunkedClient.send(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body(body)
+                    .build());
+
+            assertEquals("Echo Text Doesn't Match!", body, response.getMessageBody());
+            assertTrue("Last Flag Expected!", response.isLast());
+        } finally {
+            chunkedClient.close();
+        }
+    }
+
+    @Test
+    public void testFailingChunkedResponseEndsWithServerError(){
+        final JSR356SwaggerSocketClient failingClient = new JSR356SwaggerSocketClientImpl().requestTimeout(10000);
+        failingClient.open(String.format("ws://localhost:%d/chunked/test", port));
+
+        try {
+            // a few chunks go out with last=false before the resource throws
+            final long start = System.currentTimeMillis();
+            final Response response = failingClient.send(new Request.Builder()
+                    .path("/fail")
+                    .method("POST")
+                    .body("4096")
+                    .build());
+
+            assertEquals("Server Error Status Expected!", 500, response.getStatusCode());
+            assertTrue("Last Flag Expected!", response.isLast());
+            assertTrue("Response Waited For The Deadline!", System.currentTimeMillis() - start < 10000);
+            assertEquals("Requests Still Pending!", 0, failingClient.getPendingRequestCount());
+        } finally {
+            failingClient.close();
+        }
+    }
+
+    @Test
+    public void testCompletionStagesCompose() throws ExecutionException, InterruptedException {
+        final List<Request> requests = new ArrayList<Request>();
+        for (int i = 1; i <= 3; i++) {
+            requests.add(new Request.Builder().path("/echo").method("POST").body("echo this... " + i).build());
+        }
+
+        final CompletionStage<String> joined = jsr356SwaggerSocketClient.sendAsyncStage(requests)
+                .thenCompose(responses -> jsr356SwaggerSocketClient.sendAsyncStage(new Request.Builder()
+                        .path("/echo")
+                        .method("POST")
+                        .body(responses.get(0).getMessageBody() + ", " + responses.get(2).getMessageBody())
+                        .build()))
+                .thenApply(response -> (String) response.getMessageBody());
+
+        assertEquals("Echo Text Doesn't Match!", "echo this... 1, echo this... 3", joined.toCompletableFuture().get());
+
+        final TestJsonObject requestJsonObject = new TestJsonObject();
+        requestJsonObject.setTest("test json object");
+        final CompletionStage<TestJsonObject> typed = jsr356SwaggerSocketClient.sendAsyncStage(new Request.Builder()
+                .path("/testJsonObject")
+                .method("POST")
+                .body(requestJsonObject)
+                .build(), TestJsonObject.class);
+
+        assertEquals("Test Json Object Text Doesn't Match!", requestJsonObject.getTest(), typed.toCompletableFuture().get().getTest());
+    }
+
+    @Test
+    public void testStageSendingMoreRequestsThanCreditsLeftDoesNotBlockTheReader() throws Exception {
+        final JSR356SwaggerSocketClient creditedClient = new JSR356SwaggerSocketClientImpl();
+        creditedClient.open(String.format("ws://localhost:%d/credits/test", port));
+
+        try {
+            // 7 of the 8 credits granted by the credits servlet
+            final List<Request> requests = new ArrayList<Request>();
+            for (int i = 0; i < 7; i++) {
+                requests.add(new Request.Builder().path("/sleep").method("POST").body("300").build());
+            }
+            final CompletionStage<List<Response>> sleeping = creditedClient.sendAsyncStage(requests);
+
+            // composed on the thread reading the WebSocket, with a single credit left for 3 requests
+            final CompletionStage<List<Response>> composed = creditedClient.sendAsyncStage(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body("echo this...")
+                    .build())
+                    .thenCompose(response -> {
+                        final List<Request> echoes = new ArrayList<Request>();
+                        for (int i = 1; i <= 3; i++) {
+                            echoes.add(new Request.Builder()
+                                    .path("/echo")
+                                    .method("POST")
+                                    .body(response.getMessageBody() + " " + i)
+                                    .build());
+                        }
+                        return creditedClient.sendAsyncStage(echoes);
+                    });
+
+            final List<Response> responses = composed.toCompletableFuture().get(10, TimeUnit.SECONDS);
+            assertEquals("Echo Text Doesn't Match!", "echo this... 3", responses.get(2).getMessageBody());
+            assertEquals("Response Count Doesn't Match!", 7, sleeping.toCompletableFuture().get(10, TimeUnit.SECONDS).size());
+        } finally {
+            creditedClient.close();
+        }
+    }
+
+    @Test
+    public void testCancelledRequestDoesNotCompleteAndConnectionStaysUsable() throws ExecutionException, InterruptedException {
+        final JSR356SwaggerSocketClient parallelClient = new JSR356SwaggerSocketClientImpl();
+        parallelClient.open(String.format("ws://localhost:%d/parallel/test", port));
+
+        try {
+            final Future<Response> sleeping = parallelClient.sendAsync(new Request.Builder()
+                    .path("/sleep")
+                    .method("POST")
+                    .body("4321")
+                    .build());
+            awaitTrue("Request Not Dispatched!", () -> TestResource.SLEEPING.contains("4321"));
+
+            assertTrue("Request Not Cancelled!", sleeping.cancel(true));
+            assertTrue("Request Not Cancelled!", sleeping.isCancelled());
+            assertNull("Cancelled Request Has A Response!", sleeping.get());
+            // the parallel servlet reads the cancel while the request sleeps
+            awaitTrue("Request Not Interrupted!", () -> TestResource.INTERRUPTED.contains("4321"));
+
+            final Response response = parallelClient.send(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body("echo this...")
+                    .build());
+            assertEquals("Echo Text Doesn't Match!", "echo this...", response.getMessageBody());
+        } finally {
+            parallelClient.close();
+        }
+    }
+
+    @Test
+    public void testParallelResponsesAreMatchedToTheirRequestsByUuid() throws ExecutionException, InterruptedException, TimeoutException {
+        final JSR356SwaggerSocketClient parallelClient = new JSR356SwaggerSocketClientImpl();
+        parallelClient.open(String.format("ws://localhost:%d/parallel/test", port));
+
+        try {
+            final List<Request> requests = new ArrayList<Request>();
+            for (final String millis : Arrays.asList("601", "51", "301")) {
+                requests.add(new Request.Builder()
+                        .path("/sleep")
+                        .method("POST")
+                        .body(millis)
+                        .build());
+            }
+
+            final long start = System.currentTimeMillis();
+            final List<Future<Response>> futures = new ArrayList<Future<Response>>();
+            for (final Request request : requests) {
+                futures.add(parallelClient.sendAsync(request));
+            }
+
+            // the responses come back shortest sleep first
+            for (int i = 0; i < requests.size(); i++) {
+                final Response response = futures.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals("Response Uuid Doesn't Match!", requests.get(i).getUuid(), response.getUuid());
+                assertEquals("Response Body Doesn't Match!", "slept " + requests.get(i).getMessageBody(), response.getMessageBody());
+            }
+            assertTrue("Requests Not Dispatched In Parallel!", System.currentTimeMillis() - start < 950);
+        } finally {
+            parallelClient.close();
+        }
+    }
+
+    @Test
+    public void testRequestsBeyondTheCreditsAreRejectedByUuid() throws Exception {
+        final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final String url = String.format("ws://localhost:%d/credits/test", port);
+        final RawEndpoint endpoint = new RawEndpoint();
+        final Session session = ContainerProvider.getWebSocketContainer()
+                .connectToServer(endpoint, URI.create(url + "?SwaggerSocket=1.0"));
+
+        try {
+            final HandshakeMessage handshake = new HandshakeMessage();
+            handshake.setHandshake(new Handshake.Builder().path(url).build());
+            session.getBasicRemote().sendText(mapper.writeValueAsString(handshake));
+            final StatusMessage granted = mapper.readValue(endpoint.next(), StatusMessage.class);
+            assertEquals("Credits Not Granted!", Integer.valueOf(8), granted.getCredits());
+
+            // unlike the client, send more requests than the credits at once
+            final Request[] requests = new Request[10];
+            for (int i = 0; i < requests.length; i++) {
+                requests[i] = new Request.Builder()
+                        .path("/sleep")
+                        .method("POST")
+                        .body("302")
+                        .build();
+            }
+            session.getBasicRemote().sendText(mapper.writeValueAsString(new RequestMessage.Builder()
+                    .requests(requests)
+                    .identity(granted.getIdentity())
+                    .build()));
+
+            final Set<String> rejected = new HashSet<String>();
+            while (rejected.size() < 2) {
+                final String message = endpoint.next();
+                if (message.startsWith("{\"status\"")) {
+                    final StatusMessage status = mapper.readValue(message, StatusMessage.class);
+                    assertEquals("Too Many Requests Status Expected!", 429, status.getStatus().getStatusCode());
+                    rejected.add(status.getIdentity());
+                }
+            }
+            assertEquals("Rejected Requests Don't Match!",
+                    new HashSet<String>(Arrays.asList(requests[8].getUuid(), requests[9].getUuid())), rejected);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testRequestRejectedByTheDispatchExecutorIsUnavailable() throws ExecutionException, InterruptedException, TimeoutException {
+        final JSR356SwaggerSocketClient rejectingClient = new JSR356SwaggerSocketClientImpl();
+        rejectingClient.open(String.format("ws://localhost:%d/rejecting/test", port));
+
+        try {
+            final Future<Response> sleeping = rejectingClient.sendAsync(new Request.Builder()
+                    .path("/sleep")
+                    .method("POST")
+                    .body("701")
+                    .build());
+            awaitTrue("Request Not Dispatched!", () -> TestResource.SLEEPING.contains("701"));
+
+            // the only dispatch thread is taken
+            final Request echo = new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body("echo this...")
+                    .build();
+            final Response rejected = rejectingClient.sendAsync(echo).get(5, TimeUnit.SECONDS);
+            assertEquals("Unavailable Status Expected!", 503, rejected.getStatusCode());
+            assertEquals("Response Uuid Doesn't Match!", echo.getUuid(), rejected.getUuid());
+
+            assertEquals("Sleep Text Doesn't Match!", "slept 701", sleeping.get(5, TimeUnit.SECONDS).getMessageBody());
+        } finally {
+            rejectingClient.close();
+        }
+    }
+
+    @Test
+    public void testResponsesOfAWindowAreWrittenInOneFrameAndCounted() throws Exception {
+        final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final String url = String.format("ws://localhost:%d/coalesced/test", port);
+        final RawEndpoint endpoint = new RawEndpoint();
+        final Session session = ContainerProvider.getWebSocketContainer()
+                .connectToServer(endpoint, URI.create(url + "?SwaggerSocket=1.0"));
+
+        try {
+            final HandshakeMessage handshake = new HandshakeMessage();
+            handshake.setHandshake(new Handshake.Builder().path(url).build());
+            session.getBasicRemote().sendText(mapper.writeValueAsString(handshake));
+            final String identity = mapper.readValue(endpoint.next(), StatusMessage.class).getIdentity();
+
+            // the third body takes the batch past the 64 bytes of the coalesced servlet, the fourth waits for the window
+            final List<String> bodies = Arrays.asList("a", "b", new String(new char[70]).replace('\0', 'c'), "d");
+            final Request[] requests = new Request[bodies.size()];
+            for (int i = 0; i < requests.length; i++) {
+                requests[i] = new Request.Builder()
+                        .path("/echo")
+                        .method("POST")
+                        .body(bodies.get(i))
+                        .build();
+            }
+            session.getBasicRemote().sendText(mapper.writeValueAsString(new RequestMessage.Builder()
+                    .requests(requests)
+                    .identity(identity)
+                    .build()));
+
+            final List<String> frames = new ArrayList<String>();
+            final List<Response> responses = new ArrayList<Response>();
+            while (responses.size() < requests.length) {
+                final String message = endpoint.next();
+                if (message.startsWith("{\"identity\"")) {
+                    frames.add(message);
+                    responses.addAll(mapper.readValue(message, ResponseMessage.class).getResponses());
+                }
+            }
+            assertEquals("Frame Count Doesn't Match!", 2, frames.size());
+            assertEquals("Batch Size Doesn't Match!", 3, mapper.readValue(frames.get(0), ResponseMessage.class).getResponses().size());
+            for (int i = 0; i < requests.length; i++) {
+                assertEquals("Response Uuid Doesn't Match!", requests[i].getUuid(), responses.get(i).getUuid());
+                assertEquals("Echo Text Doesn't Match!", bodies.get(i), responses.get(i).getMessageBody());
+            }
+
+            // each response is counted with the bytes of the frame it would have been on its own
+            final int envelope = ("{\"identity\":\"" + identity + "\",\"responses\":[]}").getBytes("UTF-8").length;
+            long expected = 0;
+            for (final String frame : frames) {
+                final int count = mapper.readValue(frame, ResponseMessage.class).getResponses().size();
+                expected += frame.getBytes("UTF-8").length + (count - 1) * (envelope - 1);
+            }
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName("io.swagger.swaggersocket:type=SwaggerSocketMetrics,name="
+                    + ObjectName.quote("CoalescedSwaggerSocketServlet"));
+            String counted = null;
+            for (final String path : (String[]) server.getAttribute(name, "Paths")) {
+                if (path.startsWith("POST /echo:")) {
+                    counted = path.replaceFirst(".* out=(\\d+) .*", "$1");
+                }
+            }
+            assertEquals("Response Bytes Don't Match!", String.valueOf(expected), counted);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * A WebSocket sending the frames it is given as they are, the server's frames are read without their length.
+     */
+    @ClientEndpoint
+    public static class RawEndpoint {
+
+        private final BlockingQueue<String> messages = new LinkedBlockingQueue<String>();
+
+        @OnMessage
+        public void onMessage(final String message) {
+            messages.add(message.replaceFirst("^\\d+<->", ""));
+        }
+
+        String next() throws InterruptedException {
+            final String message = messages.poll(5, TimeUnit.SECONDS);
+            assertNotNull("Message Not Received!", message);
+            return message;
+        }
+    }
+
+    private static void awaitTrue(final String message, final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testRequestTimesOutAndLeavesNothingPending() throws ExecutionException, InterruptedException {
+        final JSR356SwaggerSocketClient timingOutClient = new JSR356SwaggerSocketClientImpl().requestTimeout(100);
+        timingOutClient.open(String.format("ws://localhost:%d/test", port));
+
+        try {
+            final Future<Response> echo = timingOutClient.sendAsync(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body("echo this...")
+                    .build());
+            final Future<Response> sleeping = timingOutClient.sendAsync(new Request.Builder()
+                    .path("/sleep")
+                    .method("POST")
+                    .body("1000")
+                    .build());
+
+            assertEquals("Echo Text Doesn't Match!", "echo this...", echo.get().getMessageBody());
+            try {
+                sleeping.get();
+                fail("Request Did Not Time Out!");
+            } catch (final ExecutionException e) {
+                assertEquals("Timeout Status Expected!", 408, ((JSR356SwaggerSocketException) e.getCause()).getStatus());
+            }
+            assertEquals("Requests Still Pending!", 0, timingOutClient.getPendingRequestCount());
+        } finally {
+            timingOutClient.close();
+        }
+    }
+
+    @Test
+    public void testTimedOutRequestIsFailedOnTheExpiryExecutor() throws ExecutionException, InterruptedException, TimeoutException {
+        final ExecutorService expiry = Executors.newSingleThreadExecutor(r -> new Thread(r, "expiry"));
+        final JSR356SwaggerSocketClient timingOutClient = new JSR356SwaggerSocketClientImpl()
+                .requestTimeout(100)
+                .expiryExecutor(expiry);
+        timingOutClient.open(String.format("ws://localhost:%d/test", port));
+
+        try {
+            final CompletableFuture<String> failedOn = new CompletableFuture<String>();
+            timingOutClient.sendAsyncStage(new Request.Builder()
+                    .path("/sleep")
+                    .method("POST")
+                    .body("1000")
+                    .build())
+                    .whenComplete((response, e) -> failedOn.complete(Thread.currentThread().getName()));
+
+            // not on the timer thread shared by the clients
+            assertEquals("Stage Not Run By The Expiry Executor!", "expiry", failedOn.get(5, TimeUnit.SECONDS));
+        } finally {
+            timingOutClient.close();
+            expiry.shutdown();
+        }
+    }
+
+    @Test
+    public void testPoolOpensConnectionsForPendingRequests() throws ExecutionException, InterruptedException {
+        final PooledSwaggerSocketClient pool = new PooledSwaggerSocketClient().maxConnections(3);
+        pool.open(String.format("ws://localhost:%d/test", port));
+
+        try {
+            assertEquals("One Connection Expected!", 1, pool.getConnectionCount());
+
+            // the connections are opened in the background, the requests go to the open ones meanwhile
+            final List<Future<Response>> responses = new ArrayList<Future<Response>>();
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (pool.getConnectionCount() < 3 && System.currentTimeMillis() < deadline) {
+                responses.add(pool.sendAsync(new Request.Builder()
+                        .path("/sleep")
+                        .method("POST")
+                        .body("200")
+                        .build()));
+                Thread.sleep(20);
+            }
+            assertEquals("Three Connections Expected!", 3, pool.getConnectionCount());
+
+            for (final Future<Response> response : responses) {
+                assertEquals("Sleep Text Doesn't Match!", "slept 200", response.get().getMessageBody());
+            }
+            assertEquals("Requests Still Pending!", 0, pool.getPendingRequestCount());
+        } finally {
+            pool.close();
+        }
+        assertFalse("Connected, But Shouldn't Be!", pool.isConnected());
+    }
+
+    @Test
+    public void testPoolStagesAreTheFuturesOfItsConnections() throws ExecutionException, InterruptedException, TimeoutException {
+        final PooledSwaggerSocketClient pool = new PooledSwaggerSocketClient();
+        pool.open(String.format("ws://localhost:%d/test", port));
+
+        try {
+            final List<Request> requests = new ArrayList<Request>();
+            for (int i = 0; i < 3; i++) {
+                requests.add(new Request.Builder()
+                        .path("/echo")
+                        .method("POST")
+                        .body("echo this... " + i)
+                        .build());
+            }
+
+            // the default stages of the client interface, over the futures of sendAsync
+            final List<Response> responses = pool.sendAsyncStage(requests).toCompletableFuture().get(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 3; i++) {
+                assertEquals("Echo Text Doesn't Match!", "echo this... " + i, responses.get(i).getMessageBody());
+            }
+            final Object echoed = pool.sendAsyncStage(requests.get(0))
+                    .thenApply(Response::getMessageBody)
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS);
+            assertEquals("Echo Text Doesn't Match!", "echo this... 0", echoed);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testMetricsAreExposedThroughJmx() throws Exception {
+        final Response response = jsr356SwaggerSocketClient.send(new Request.Builder()
+                .path("/echo")
+                .method("POST")
+                .body("echo this...")
+                .build());
+        assertEquals("Echo Text Doesn't Match!", "echo this...", response.getMessageBody());
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("io.swagger.swaggersocket:type=SwaggerSocketMetrics,name="
+                + ObjectName.quote("SwaggerSocketServlet"));
+        assertTrue("Connection Not Counted!", (Integer) server.getAttribute(name, "Connections") >= 1);
+
+        boolean found = false;
+        for (String path : (String[]) server.getAttribute(name, "Paths")) {
+            found |= path.startsWith("POST /echo:");
+        }
+        assertTrue("Path Not Recorded: " + Arrays.toString((String[]) server.getAttribute(name, "Paths")), found);
+    }
+
     @Test(expected=JSR356SwaggerSocketException.class)
     public void testClientConnectingWithInvalidProtocolThrowsException(){
         final JSR356SwaggerSocketClientImpl jsr356SwaggerSocketClient = new JSR356SwaggerSocketClientImpl();
@@ -261,6 +919,30 @@ public class JSR356SwaggerSocketClientTest extends EmbeddedTomcatTestBase {
         assertEquals("Echo Text Doesn't Match!", "echo this...", response2.getMessageBody());
     }
 
+    @Test
+    public void testBinaryDataFormatsWithBatchCallToEchoService(){
+        for (final String dataFormat : new String[]{DataFormat.SMILE, DataFormat.CBOR}) {
+            final JSR356SwaggerSocketClient binaryClient = new JSR356SwaggerSocketClientImpl();
+            binaryClient.open(new Request.Builder()
+                    .path(String.format("ws://localhost:%d/test", port))
+                    .format(dataFormat)
+                    .build());
+
+            try {
+                final List<Request> requests = new ArrayList<Request>();
+                requests.add(new Request.Builder().path("/echo").method("POST").body("echo this... 1").build());
+                requests.add(new Request.Builder().path("/echo").method("POST").body("echo this... 2").build());
+
+                final List<Response> responses = binaryClient.send(requests);
+
+                assertEquals("Echo Text Doesn't Match!", "echo this... 1", responses.get(0).getMessageBody());
+                assertEquals("Echo Text Doesn't Match!", "echo this... 2", responses.get(1).getMessageBody());
+            } finally {
+                binaryClient.close();
+            }
+        }
+    }
+
 
     @AfterClass
     public static void tearDown(){
@@ -0,0 +1,319 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client;
+
+import io.swagger.swaggersocket.java.jsr356.client.impl.JSR356SwaggerSocketClientImpl;
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.server.LatencyHistogram;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a request mix over several client connections and reports the throughput, the latency percentiles and
+ * what the garbage collector did meanwhile. Both ends run in this JVM, so the GC and heap figures cover the server
+ * and the clients together.
+ * <p>
+ * A closed loop sends the next batch of a connection once the previous one is answered, after the think time. An
+ * open loop sends batches at a fixed rate whatever the server does, and measures the latency from when a batch was
+ * due so a stalled server isn't hidden.
+ */
+final class LoadGenerator {
+
+    static final class Settings {
+        int connections = 4;
+        int batch = 1;
+        int bodySize = 128;
+        long thinkTimeMillis;
+        boolean openLoop;
+        // requests per second of all the connections, open loop only
+        int rate = 1000;
+        int warmupSeconds = 2;
+        int durationSeconds = 10;
+        String path = "/echo";
+
+        /**
+         * Read the settings from the swaggersocket.load.xxx system properties.
+         */
+        static Settings fromSystemProperties() {
+            Settings s = new Settings();
+            s.connections = Integer.getInteger("swaggersocket.load.connections", s.connections);
+            s.batch = Integer.getInteger("swaggersocket.load.batch", s.batch);
+            s.bodySize = Integer.getInteger("swaggersocket.load.bodySize", s.bodySize);
+            s.thinkTimeMillis = Long.getLong("swaggersocket.load.thinkTime", s.thinkTimeMillis);
+            s.openLoop = "open".equals(System.getProperty("swaggersocket.load.mode", "closed"));
+            s.rate = Integer.getInteger("swaggersocket.load.rate", s.rate);
+            s.warmupSeconds = Integer.getInteger("swaggersocket.load.warmup", s.warmupSeconds);
+            s.durationSeconds = Integer.getInteger("swaggersocket.load.duration", s.durationSeconds);
+            s.path = System.getProperty("swaggersocket.load.path", s.path);
+            return s;
+        }
+
+        @Override
+        public String toString() {
+            return (openLoop ? "open loop at " + rate + " requests/s" : "closed loop, think time " + thinkTimeMillis + " ms")
+                    + ", " + connections + " connections, batches of " + batch + ", " + bodySize + " byte bodies to "
+                    + path + ", " + warmupSeconds + " s warmup, " + durationSeconds + " s measured";
+        }
+    }
+
+    static final class Report {
+        final Settings settings;
+        final LatencyHistogram latency;
+        final long requests;
+        final long errors;
+        final long elapsedNanos;
+        final long gcCount;
+        final long gcMillis;
+        final long heapUsed;
+        final long heapPeak;
+
+        Report(Settings settings, LatencyHistogram latency, long requests, long errors, long elapsedNanos,
+               long gcCount, long gcMillis, long heapUsed, long heapPeak) {
+            this.settings = settings;
+            this.latency = latency;
+            this.requests = requests;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.heapUsed = heapUsed;
+            this.heapPeak = heapPeak;
+        }
+
+        double getThroughput() {
+            return requests * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SwaggerSocket load: %s%n"
+                            + "  throughput  %.0f requests/s (%d requests, %d errors)%n"
+                            + "  latency     p50 %d us, p99 %d us, p999 %d us, max %d us%n"
+                            + "  gc          %d collections, %d ms%n"
+                            + "  heap        %d MB used, %d MB peak",
+                    settings, getThroughput(), requests, errors,
+                    micros(latency.getPercentileNanos(50)), micros(latency.getPercentileNanos(99)),
+                    micros(latency.getPercentileNanos(99.9)), micros(latency.getMaxNanos()),
+                    gcCount, gcMillis, heapUsed >> 20, heapPeak >> 20);
+        }
+
+        private static long micros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+
+    private final String url;
+    private final Settings settings;
+    private final String body;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean recording;
+    private volatile boolean stopped;
+
+    LoadGenerator(String url, Settings settings) {
+        this.url = url;
+        this.settings = settings;
+        StringBuilder b = new StringBuilder(settings.bodySize);
+        while (b.length() < settings.bodySize) {
+            b.append((char) ('a' + b.length() % 26));
+        }
+        this.body = b.toString();
+    }
+
+    Report run() throws InterruptedException {
+        List<JSR356SwaggerSocketClient> clients = new ArrayList<JSR356SwaggerSocketClient>();
+        List<Thread> workers = new ArrayList<Thread>();
+        ExecutorService senders = settings.openLoop ? Executors.newCachedThreadPool(daemon("LoadGenerator-Send-")) : null;
+        ThreadFactory workerFactory = daemon("LoadGenerator-Connection-");
+        try {
+            for (int i = 0; i < settings.connections; i++) {
+                JSR356SwaggerSocketClient client = new JSR356SwaggerSocketClientImpl();
+                client.open(url);
+                clients.add(client);
+                Runnable worker = settings.openLoop ? openLoop(client, senders) : closedLoop(client);
+                Thread t = workerFactory.newThread(worker);
+                workers.add(t);
+                t.start();
+            }
+
+            TimeUnit.SECONDS.sleep(settings.warmupSeconds);
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            long start = System.nanoTime();
+            recording = true;
+
+            TimeUnit.SECONDS.sleep(settings.durationSeconds);
+            recording = false;
+            long elapsed = System.nanoTime() - start;
+            gcCount = gcCount() - gcCount;
+            gcMillis = gcMillis() - gcMillis;
+            long heapPeak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPeak += pool.getPeakUsage().getUsed();
+                }
+            }
+            long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            return new Report(settings, latency, requests.get(), errors.get(), elapsed, gcCount, gcMillis,
+                    heapUsed, heapPeak);
+        } finally {
+            stopped = true;
+            for (Thread t : workers) {
+                t.join(TimeUnit.SECONDS.toMillis(30));
+            }
+            if (senders != null) {
+                senders.shutdown();
+                senders.awaitTermination(30, TimeUnit.SECONDS);
+            }
+            for (JSR356SwaggerSocketClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    private Runnable closedLoop(final JSR356SwaggerSocketClient client) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                while (!stopped) {
+                    send(client, System.nanoTime());
+                    if (settings.thinkTimeMillis > 0) {
+                        try {
+                            Thread.sleep(settings.thinkTimeMillis);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    private Runnable openLoop(final JSR356SwaggerSocketClient client, final ExecutorService senders) {
+        // a batch in flight holds a sender thread, past this many the batch is counted as failed
+        final Semaphore outstanding = new Semaphore(64);
+        final long interval = TimeUnit.SECONDS.toNanos(1) * settings.connections * settings.batch / settings.rate;
+        return new Runnable() {
+            @Override
+            public void run() {
+                long due = System.nanoTime();
+                while (!stopped) {
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    final long scheduled = due;
+                    due += interval;
+                    if (!outstanding.tryAcquire()) {
+                        if (recording) {
+                            errors.addAndGet(settings.batch);
+                        }
+                        continue;
+                    }
+                    senders.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                send(client, scheduled);
+                            } finally {
+                                outstanding.release();
+                            }
+                        }
+                    });
+                }
+            }
+        };
+    }
+
+    /**
+     * Send a batch and record the latency of its requests from the given start.
+     */
+    private void send(JSR356SwaggerSocketClient client, long start) {
+        List<Request> batch = new ArrayList<Request>(settings.batch);
+        for (int i = 0; i < settings.batch; i++) {
+            batch.add(new Request.Builder().path(settings.path).method("POST").body(body).build());
+        }
+        boolean recorded = recording;
+        try {
+            List<Response> responses = client.send(batch);
+            long nanos = System.nanoTime() - start;
+            if (!recorded) {
+                return;
+            }
+            for (Response r : responses) {
+                if (r.getStatusCode() < 400) {
+                    latency.record(nanos);
+                    requests.incrementAndGet();
+                } else {
+                    errors.incrementAndGet();
+                }
+            }
+        } catch (RuntimeException e) {
+            if (recorded) {
+                errors.addAndGet(settings.batch);
+            }
+        }
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += Math.max(0, gc.getCollectionCount());
+        }
+        return n;
+    }
+
+    private static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += Math.max(0, gc.getCollectionTime());
+        }
+        return n;
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return new ThreadFactory() {
+            private final AtomicLong count = new AtomicLong();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread t = new Thread(runnable, name + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link LoadGenerator} against the embedded server, only when asked for:
+ * <pre>
+ * mvn test -Dtest=LoadGeneratorTest -Dswaggersocket.load=true -Dswaggersocket.load.connections=8 \
+ *     -Dswaggersocket.load.batch=4 -Dswaggersocket.load.bodySize=1024 -Dswaggersocket.load.mode=open \
+ *     -Dswaggersocket.load.rate=5000 -Dswaggersocket.load.duration=30
+ * </pre>
+ * The other settings are swaggersocket.load.thinkTime (ms, closed loop), swaggersocket.load.warmup (s) and
+ * swaggersocket.load.path. The credits servlet grants 8 credits, larger batches are sent in turns.
+ */
+public class LoadGeneratorTest extends EmbeddedTomcatTestBase {
+
+    @Test
+    public void testLoad() throws InterruptedException {
+        Assume.assumeTrue(Boolean.getBoolean("swaggersocket.load"));
+
+        final LoadGenerator.Settings settings = LoadGenerator.Settings.fromSystemProperties();
+        final LoadGenerator.Report report = new LoadGenerator(String.format("ws://localhost:%d/credits/test", port), settings).run();
+        System.out.println(report);
+
+        assertTrue("No Request Completed!", report.requests > 0);
+        assertEquals("Failed Requests!", 0, report.errors);
+    }
+}
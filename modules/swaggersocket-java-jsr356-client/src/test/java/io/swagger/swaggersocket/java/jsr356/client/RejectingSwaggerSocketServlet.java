@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client;
+
+import io.swagger.swaggersocket.server.JSR356SwaggerSocketServlet;
+import io.swagger.swaggersocket.server.SwaggerSocketProtocolInterceptor;
+import org.atmosphere.cpr.AtmosphereInterceptor;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches the requests on a single thread without a queue, a request read while another one runs is rejected.
+ */
+public class RejectingSwaggerSocketServlet extends JSR356SwaggerSocketServlet {
+
+    private transient ExecutorService executor;
+
+    @Override
+    public void init(final ServletConfig sc) throws ServletException {
+        super.init(sc);
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+        for (final AtmosphereInterceptor i : framework().interceptors()) {
+            if (i instanceof SwaggerSocketProtocolInterceptor) {
+                SwaggerSocketProtocolInterceptor.class.cast(i).executor(executor);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -15,15 +15,36 @@
  */
 package io.swagger.swaggersocket.java.jsr356.client;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 @Path("/test")
 public class TestResource {
 
+    // the bodies of the /sleep requests running and of those interrupted
+    static final Set<String> SLEEPING = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    static final Set<String> INTERRUPTED = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // the /stream responses being written and the most written at once
+    static final AtomicInteger STREAMING = new AtomicInteger();
+    static final AtomicInteger MAX_STREAMING = new AtomicInteger();
+
     @Path("/echo")
     @Produces(MediaType.TEXT_PLAIN)
     @POST
@@ -31,6 +52,81 @@ public class TestResource {
         return Response.ok().entity(echo).build();
     }
 
+    @Path("/parameters")
+    @Produces(MediaType.TEXT_PLAIN)
+    @GET
+    public Response parameters(@Context final HttpServletRequest request){
+        // the parameter map also holds the parameters of the connection's URL
+        final Map<String, String[]> parameters = request.getParameterMap();
+        final String[] name = parameters.get("name");
+        return Response.ok().entity((name == null ? "none" : name[0]) + " " + parameters.containsKey("SwaggerSocket")).build();
+    }
+
+    @Path("/sleep")
+    @Produces(MediaType.TEXT_PLAIN)
+    @POST
+    public Response sleep(final String millis) throws InterruptedException {
+        SLEEPING.add(millis);
+        try {
+            Thread.sleep(Long.parseLong(millis.trim()));
+        } catch (final InterruptedException e) {
+            INTERRUPTED.add(millis);
+            throw e;
+        } finally {
+            SLEEPING.remove(millis);
+        }
+        return Response.ok().entity("slept " + millis).build();
+    }
+
+    @Path("/fail")
+    @Produces(MediaType.TEXT_PLAIN)
+    @POST
+    public Response fail(final String bytes) {
+        // stream part of the body before failing
+        final int n = Integer.parseInt(bytes.trim());
+        return Response.ok().entity(new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                for (int i = 0; i < n; i++) {
+                    output.write('x');
+                }
+                output.flush();
+                throw new IllegalStateException("failed after " + n + " bytes");
+            }
+        }).build();
+    }
+
+    @Path("/stream")
+    @Produces(MediaType.TEXT_PLAIN)
+    @POST
+    public Response stream(final String parts) {
+        // flush each part of 1500 bytes on its own, a response of several frames
+        final int n = Integer.parseInt(parts.trim());
+        return Response.ok().entity(new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                final int streaming = STREAMING.incrementAndGet();
+                int max;
+                while ((max = MAX_STREAMING.get()) < streaming && !MAX_STREAMING.compareAndSet(max, streaming)) {
+                    // retry
+                }
+                try {
+                    for (int i = 0; i < n; i++) {
+                        final byte[] part = new byte[1500];
+                        Arrays.fill(part, (byte) ('a' + i));
+                        output.write(part);
+                        output.flush();
+                        Thread.sleep(20);
+                    }
+                } catch (final InterruptedException e) {
+                    throw new InterruptedIOException();
+                } finally {
+                    STREAMING.decrementAndGet();
+                }
+            }
+        }).build();
+    }
+
     @Path("/testJsonObject")
     @Produces(MediaType.APPLICATION_JSON)
     @POST
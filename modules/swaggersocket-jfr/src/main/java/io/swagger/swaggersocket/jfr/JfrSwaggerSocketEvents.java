@@ -0,0 +1,150 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.jfr;
+
+import io.swagger.swaggersocket.server.SwaggerSocketEvents;
+import jdk.jfr.EventType;
+
+/**
+ * Records the SwaggerSocket requests as Java Flight Recorder events, registered as the {@link SwaggerSocketEvents}
+ * service. The events are disabled by default, enable them with the swaggersocket.jfc settings of this jar, e.g.
+ * {@code jcmd <pid> JFR.start settings=swaggersocket.jfc}.
+ * <p>
+ * A disabled event costs the check of its {@link EventType}, no event is created.
+ */
+public class JfrSwaggerSocketEvents extends SwaggerSocketEvents {
+
+    private static final EventType HANDSHAKE = EventType.getEventType(HandshakeEvent.class);
+    private static final EventType PARSE = EventType.getEventType(ParseEvent.class);
+    private static final EventType DISPATCH = EventType.getEventType(DispatchEvent.class);
+    private static final EventType WRAP = EventType.getEventType(WrapEvent.class);
+    private static final EventType HEARTBEAT = EventType.getEventType(HeartbeatEvent.class);
+    private static final EventType CLOSE = EventType.getEventType(CloseEvent.class);
+
+    @Override
+    public Object handshakeBegin() {
+        if (!HANDSHAKE.isEnabled()) {
+            return null;
+        }
+        HandshakeEvent e = new HandshakeEvent();
+        e.begin();
+        return e;
+    }
+
+    @Override
+    public void handshake(Object token, String identity, String transport, String dataFormat) {
+        HandshakeEvent e = (HandshakeEvent) token;
+        e.end();
+        if (e.shouldCommit()) {
+            e.identity = identity;
+            e.transport = transport;
+            e.dataFormat = dataFormat == null ? "" : dataFormat;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object parseBegin() {
+        if (!PARSE.isEnabled()) {
+            return null;
+        }
+        ParseEvent e = new ParseEvent();
+        e.begin();
+        return e;
+    }
+
+    @Override
+    public void parse(Object token, String transport, String type, int requests) {
+        ParseEvent e = (ParseEvent) token;
+        e.end();
+        if (e.shouldCommit()) {
+            e.transport = transport;
+            e.type = type;
+            e.requests = requests;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object dispatchBegin() {
+        if (!DISPATCH.isEnabled()) {
+            return null;
+        }
+        DispatchEvent e = new DispatchEvent();
+        e.begin();
+        return e;
+    }
+
+    @Override
+    public void dispatch(Object token, String identity, String uuid, String method, String path, int status,
+                         long bytesIn) {
+        DispatchEvent e = (DispatchEvent) token;
+        e.end();
+        if (e.shouldCommit()) {
+            e.identity = identity;
+            e.uuid = uuid;
+            e.method = method;
+            e.path = path;
+            e.status = status;
+            e.bytesIn = bytesIn;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object wrapBegin() {
+        if (!WRAP.isEnabled()) {
+            return null;
+        }
+        WrapEvent e = new WrapEvent();
+        e.begin();
+        return e;
+    }
+
+    @Override
+    public void wrap(Object token, String identity, String uuid, String path, long bytes) {
+        WrapEvent e = (WrapEvent) token;
+        e.end();
+        if (e.shouldCommit()) {
+            e.identity = identity;
+            e.uuid = uuid;
+            e.path = path;
+            e.bytes = bytes;
+            e.commit();
+        }
+    }
+
+    @Override
+    public void heartbeat(String identity, String transport, long bytes) {
+        if (HEARTBEAT.isEnabled()) {
+            HeartbeatEvent e = new HeartbeatEvent();
+            e.identity = identity;
+            e.transport = transport;
+            e.bytes = bytes;
+            e.commit();
+        }
+    }
+
+    @Override
+    public void close(String identity, String reason) {
+        if (CLOSE.isEnabled()) {
+            CloseEvent e = new CloseEvent();
+            e.identity = identity;
+            e.reason = reason;
+            e.commit();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("io.swagger.swaggersocket.Wrap")
+@Label("SwaggerSocket Wrap")
+@Description("Serializing a response into a SwaggerSocket frame")
+@Category("SwaggerSocket")
+@Enabled(false)
+@StackTrace(false)
+public final class WrapEvent extends Event {
+
+    @Label("Identity")
+    @Description("The identity of the connection")
+    String identity;
+
+    @Label("Request")
+    @Description("The uuid of the request")
+    String uuid;
+
+    @Label("Path")
+    String path;
+
+    @Label("Bytes")
+    @Description("The length of the frame")
+    @DataAmount
+    long bytes;
+}
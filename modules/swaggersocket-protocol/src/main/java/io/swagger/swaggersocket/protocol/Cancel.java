@@ -0,0 +1,52 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import java.util.List;
+
+/**
+ * Abandons the in-flight requests with the given uuids. Their responses, if any, are not sent.
+ */
+public class Cancel {
+
+    private String identity;
+    private List<String> uuids;
+
+    public Cancel() {
+    }
+
+    public Cancel(String identity, List<String> uuids) {
+        this.identity = identity;
+        this.uuids = uuids;
+    }
+
+    public String getIdentity() {
+        return identity;
+    }
+
+    public void setIdentity(String identity) {
+        this.identity = identity;
+    }
+
+    public List<String> getUuids() {
+        return uuids;
+    }
+
+    public void setUuids(List<String> uuids) {
+        this.uuids = uuids;
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The encodings a SwaggerSocket connection can negotiate through {@link Handshake#getDataFormat()}.
+ * JSON frames are sent as text, Smile and CBOR frames as binary.
+ */
+public final class DataFormat {
+
+    public static final String JSON = "application/json";
+    public static final String SMILE = "application/x-jackson-smile";
+    public static final String CBOR = "application/cbor";
+
+    private DataFormat() {
+    }
+
+    /**
+     * @return true if the format is one of the supported binary encodings
+     */
+    public static boolean isBinary(String dataFormat) {
+        return SMILE.equalsIgnoreCase(dataFormat) || CBOR.equalsIgnoreCase(dataFormat);
+    }
+
+    /**
+     * Create an {@link ObjectMapper} reading and writing frames in the given format, JSON if the format is not binary.
+     */
+    public static ObjectMapper newObjectMapper(String dataFormat) {
+        if (SMILE.equalsIgnoreCase(dataFormat)) {
+            return new ObjectMapper(new SmileFactory());
+        } else if (CBOR.equalsIgnoreCase(dataFormat)) {
+            return new ObjectMapper(new CBORFactory());
+        }
+        return new ObjectMapper();
+    }
+}
@@ -26,9 +26,9 @@ public class Handshake extends ProtocolBase {
 
     private String protocolName = "SwaggerSocket";
     private String protocolVersion = "1.0";
-    private String dataFormat = "application/json";
 
     public Handshake() {
+        dataFormat = DataFormat.JSON;
     }
 
     private Handshake(Builder b) {
@@ -62,7 +62,7 @@ public class Handshake extends ProtocolBase {
     public final static class Builder {
         private String protocolName = "SwaggerSocket";
         private String protocolVersion = "1.0";
-        private String dataFormat = "application/json";
+        private String dataFormat = DataFormat.JSON;
         private List<Header> headers;
         private List<QueryString> queryString;
         private String path;
@@ -0,0 +1,183 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * A JSON message body embedded as a JSON value of the frame instead of an escaped string.
+ * <p>
+ * A body created from JSON text is copied verbatim into JSON frames. A body read from a frame keeps its tokens and
+ * is only turned back into text or bound to an object when asked for.
+ */
+public final class JsonBody implements JsonSerializable {
+
+    private static final JsonFactory factory = new JsonFactory();
+    private static final ObjectMapper mapper = new ObjectMapper(factory);
+
+    private final TokenBuffer tokens;
+    private volatile String json;
+
+    private JsonBody(String json, TokenBuffer tokens) {
+        this.json = json;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Wrap JSON text, which must be a single valid JSON value. See {@link #isValid(String)}.
+     */
+    public static JsonBody of(String json) {
+        return new JsonBody(json, null);
+    }
+
+    /**
+     * @return true if the text is exactly one JSON value
+     */
+    public static boolean isValid(String json) {
+        try {
+            return isValid(factory.createParser(json));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the UTF-8 encoded bytes are exactly one JSON value
+     */
+    public static boolean isValid(byte[] json, int offset, int length) {
+        try {
+            return isValid(factory.createParser(json, offset, length));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isValid(JsonParser p) throws IOException {
+        try {
+            if (p.nextToken() == null) {
+                return false;
+            }
+            p.skipChildren();
+            return p.nextToken() == null;
+        } finally {
+            p.close();
+        }
+    }
+
+    /**
+     * @return true if the body was read from a frame
+     */
+    boolean isRead() {
+        return tokens != null;
+    }
+
+    /**
+     * @return the body as Jackson binds an {@link Object}: a Map, a List, a String, a Number or a Boolean
+     */
+    Object value() {
+        try {
+            return bind(mapper, Object.class);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Bind the body to an object of the given type.
+     */
+    public <T> T bind(ObjectMapper mapper, Class<T> type) throws IOException {
+        if (tokens != null) {
+            return mapper.readValue(tokens.asParser(mapper), type);
+        }
+        return mapper.readValue(json, type);
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException, JsonProcessingException {
+        if (tokens != null) {
+            tokens.serialize(gen);
+        } else if (gen instanceof JsonGeneratorImpl) {
+            gen.writeRawValue(json);
+        } else {
+            // binary frames can't take raw text
+            JsonParser p = factory.createParser(json);
+            try {
+                p.nextToken();
+                gen.copyCurrentStructure(p);
+            } finally {
+                p.close();
+            }
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer)
+            throws IOException, JsonProcessingException {
+        serialize(gen, provider);
+    }
+
+    /**
+     * @return the body as JSON text
+     */
+    @Override
+    public String toString() {
+        String s = json;
+        if (s == null) {
+            StringWriter w = new StringWriter();
+            try {
+                JsonGenerator gen = factory.createGenerator(w);
+                tokens.serialize(gen);
+                gen.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            s = w.toString();
+            json = s;
+        }
+        return s;
+    }
+
+    /**
+     * Reads a message body: a string stays a {@link String}, any other value is kept as a {@link JsonBody} which
+     * {@link ProtocolBase#getMessageBody()} binds when asked for.
+     */
+    public static final class Deserializer extends JsonDeserializer<Object> {
+        @Override
+        public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+            if (p.getCurrentToken() == JsonToken.VALUE_STRING) {
+                return p.getText();
+            }
+            TokenBuffer tokens = new TokenBuffer(p);
+            tokens.copyCurrentStructure(p);
+            return new JsonBody(null, tokens);
+        }
+    }
+}
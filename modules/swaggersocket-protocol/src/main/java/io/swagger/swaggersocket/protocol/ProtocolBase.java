@@ -15,6 +15,9 @@
  */
 package io.swagger.swaggersocket.protocol;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
 import java.util.List;
 
 public class ProtocolBase {
@@ -24,6 +27,8 @@ public class ProtocolBase {
     protected String uuid;
     protected String method;
     protected Object messageBody;
+    // the JSON value a message body other than a string was read from, bound to messageBody when asked for
+    protected JsonBody rawMessageBody;
     protected String dataFormat;
 
     public ProtocolBase(){
@@ -77,12 +82,36 @@ public class ProtocolBase {
         this.method = method;
     }
 
+    /**
+     * @return the message body, a message body read from a frame as Jackson binds an {@link Object}: a
+     * {@link String}, a {@link java.util.Map}, a {@link java.util.List}, a {@link Number} or a {@link Boolean}
+     */
     public Object getMessageBody() {
+        if (messageBody == null && rawMessageBody != null) {
+            messageBody = rawMessageBody.value();
+        }
         return messageBody;
     }
 
+    @JsonDeserialize(using = JsonBody.Deserializer.class)
     public void setMessageBody(Object messageBody) {
-        this.messageBody = messageBody;
+        if (messageBody instanceof JsonBody && JsonBody.class.cast(messageBody).isRead()) {
+            this.messageBody = null;
+            this.rawMessageBody = JsonBody.class.cast(messageBody);
+        } else {
+            this.messageBody = messageBody;
+            this.rawMessageBody = null;
+        }
+    }
+
+    /**
+     * @return the JSON value a message body other than a string was read from, to turn it back into text or to bind
+     * it to a type without going through {@link #getMessageBody()}. Null for a string body or a body not read from
+     * a frame.
+     */
+    @JsonIgnore
+    public JsonBody getRawMessageBody() {
+        return rawMessageBody;
     }
 
 }
@@ -22,6 +22,7 @@ import java.util.UUID;
 public class Request extends ProtocolBase {
 
     private Object attachment;
+    private boolean idempotent;
 
     public Request() {
     }
@@ -35,6 +36,7 @@ public class Request extends ProtocolBase {
         dataFormat = b.dataFormat;
         messageBody = b.messageBody;
         attachment = b.attachment;
+        idempotent = b.idempotent;
     }
 
     public Object attachment() {
@@ -46,6 +48,20 @@ public class Request extends ProtocolBase {
         return this;
     }
 
+    /**
+     * True if the request may be sent again when the connection is lost before its response, always the case for
+     * GET, HEAD and OPTIONS. Not sent to the server.
+     */
+    public boolean idempotent() {
+        return idempotent || "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)
+                || "OPTIONS".equalsIgnoreCase(method);
+    }
+
+    public Request idempotent(boolean idempotent) {
+        this.idempotent = idempotent;
+        return this;
+    }
+
     public final static class Builder {
         private String dataFormat = "application/json";
         private List<Header> headers = Collections.<Header>emptyList();
@@ -55,6 +71,7 @@ public class Request extends ProtocolBase {
         private String method = "POST";
         private Object messageBody = "";
         private Object attachment;
+        private boolean idempotent;
 
         public Builder format(String dataFormat) {
             this.dataFormat = dataFormat;
@@ -96,6 +113,11 @@ public class Request extends ProtocolBase {
             return this;
         }
 
+        public Builder idempotent(boolean idempotent) {
+            this.idempotent = idempotent;
+            return this;
+        }
+
         public Request build() {
             return new Request(this);
         }
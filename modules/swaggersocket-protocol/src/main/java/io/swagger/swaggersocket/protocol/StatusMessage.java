@@ -15,10 +15,16 @@
  */
 package io.swagger.swaggersocket.protocol;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 public class StatusMessage {
 
     private Status status;
     private String identity;
+    private String dataFormat;
+    private Integer credits;
+    private Integer chunkSize;
+    private Boolean rawJson;
 
     public StatusMessage(){
         this.status = new Status(200,"OK");
@@ -46,6 +52,57 @@ public class StatusMessage {
         this.identity = identity;
     }
 
+    /**
+     * The binary {@link DataFormat} accepted during the handshake, null when the connection stays on JSON.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public String getDataFormat() {
+        return dataFormat;
+    }
+
+    public void setDataFormat(String dataFormat) {
+        this.dataFormat = dataFormat;
+    }
+
+    /**
+     * The number of requests the client may have in flight, granted during the handshake. Each request takes one
+     * credit, given back with its response. Null when the server doesn't limit them.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Integer getCredits() {
+        return credits;
+    }
+
+    public void setCredits(Integer credits) {
+        this.credits = credits;
+    }
+
+    /**
+     * The largest body of a response frame, sent during the handshake when the server splits the larger bodies.
+     * Every response then ends with a frame whose last flag is set.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * True when the server exchanges JSON bodies as JSON values of the frame rather than as escaped strings, sent
+     * during the handshake. A client may then embed its JSON request bodies the same way.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Boolean getRawJson() {
+        return rawJson;
+    }
+
+    public void setRawJson(Boolean rawJson) {
+        this.rawJson = rawJson;
+    }
+
     public final static class Status {
 
         public static final int NO_STATUS = -1;
@@ -81,6 +138,10 @@ public class StatusMessage {
 
         private Status status;
         private String identity;
+        private String dataFormat;
+        private Integer credits;
+        private Integer chunkSize;
+        private Boolean rawJson;
 
         public Builder status(Status status) {
             this.status = status;
@@ -92,11 +153,35 @@ public class StatusMessage {
             return this;
         }
 
+        public Builder dataFormat(String dataFormat) {
+            this.dataFormat = dataFormat;
+            return this;
+        }
+
+        public Builder credits(Integer credits) {
+            this.credits = credits;
+            return this;
+        }
+
+        public Builder chunkSize(Integer chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder rawJson(Boolean rawJson) {
+            this.rawJson = rawJson;
+            return this;
+        }
+
         public StatusMessage build(){
             // Jackson bark
             StatusMessage s = new StatusMessage();
             s.setIdentity(identity);
             s.setStatus(status);
+            s.setDataFormat(dataFormat);
+            s.setCredits(credits);
+            s.setChunkSize(chunkSize);
+            s.setRawJson(rawJson);
             return s;
         }
 
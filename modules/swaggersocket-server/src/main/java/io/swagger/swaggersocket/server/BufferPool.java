@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of byte arrays in power of two size classes from 1 KB to 1 MB, shared by the responses buffering their
+ * writes. Arrays returned while the pool already retains its capacity, and larger arrays, are left to the garbage
+ * collector.
+ */
+public final class BufferPool {
+
+    private static final int MIN_SHIFT = 10;
+    private static final int MAX_SHIFT = 20;
+
+    private final List<Queue<byte[]>> classes;
+    private final long capacity;
+    private final AtomicLong retained = new AtomicLong();
+    private final AtomicLong inUse = new AtomicLong();
+    private final AtomicLong highWaterMark = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity the maximum number of bytes kept in the pool, 0 disables pooling
+     */
+    public BufferPool(long capacity) {
+        this.capacity = capacity;
+        classes = new ArrayList<Queue<byte[]>>(MAX_SHIFT - MIN_SHIFT + 1);
+        for (int i = MIN_SHIFT; i <= MAX_SHIFT; i++) {
+            classes.add(new ConcurrentLinkedQueue<byte[]>());
+        }
+    }
+
+    /**
+     * Borrow an array of at least the given length.
+     */
+    public byte[] acquire(int length) {
+        int c = sizeClass(length);
+        byte[] b = null;
+        if (c >= 0) {
+            b = classes.get(c).poll();
+        }
+        if (b != null) {
+            retained.addAndGet(-b.length);
+            hits.incrementAndGet();
+        } else {
+            b = new byte[c >= 0 ? 1 << (c + MIN_SHIFT) : length];
+            misses.incrementAndGet();
+        }
+        long used = inUse.addAndGet(b.length);
+        long max;
+        while (used > (max = highWaterMark.get()) && !highWaterMark.compareAndSet(max, used)) {
+            // retry
+        }
+        return b;
+    }
+
+    /**
+     * Give back an array obtained from {@link #acquire(int)}. It must not be used anymore.
+     */
+    public void release(byte[] b) {
+        inUse.addAndGet(-b.length);
+        int c = sizeClass(b.length);
+        if (c < 0 || b.length != 1 << (c + MIN_SHIFT)) {
+            return;
+        }
+        if (retained.addAndGet(b.length) > capacity) {
+            retained.addAndGet(-b.length);
+            return;
+        }
+        classes.get(c).offer(b);
+    }
+
+    private static int sizeClass(int length) {
+        if (length > 1 << MAX_SHIFT) {
+            return -1;
+        }
+        int shift = length <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(length - 1);
+        return shift - MIN_SHIFT;
+    }
+
+    /**
+     * @return the number of arrays reused from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of arrays allocated because none of the size was pooled
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the largest number of bytes borrowed at the same time
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * @return the number of bytes currently kept in the pool
+     */
+    public long getRetained() {
+        return retained.get();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+}
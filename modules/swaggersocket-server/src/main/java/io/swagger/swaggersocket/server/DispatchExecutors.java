@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the executors used to dispatch the requests of a SwaggerSocket message.
+ * Virtual threads are looked up reflectively so the server keeps running on older runtimes.
+ */
+public final class DispatchExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatchExecutors.class);
+    private static final String THREAD_NAME = "SwaggerSocket-Dispatch-";
+
+    private DispatchExecutors() {
+    }
+
+    /**
+     * A bounded pool of daemon platform threads.
+     */
+    public static ExecutorService newPlatformExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread t = new Thread(runnable, THREAD_NAME + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * An executor starting a new virtual thread per task.
+     *
+     * @return the executor or null if the runtime does not support virtual threads (JDK 21+)
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method m = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) m.invoke(null, factory);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            logger.debug("Virtual threads are not available", e);
+            return null;
+        }
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create the dispatch executor, preferring virtual threads when asked for and supported.
+     *
+     * @param virtualThreads true to use a virtual thread per request
+     * @param threads        the size of the platform pool used otherwise
+     */
+    public static ExecutorService newDispatchExecutor(boolean virtualThreads, int threads) {
+        if (virtualThreads) {
+            ExecutorService e = newVirtualThreadExecutor();
+            if (e != null) {
+                logger.info("SwaggerSocket requests dispatched on virtual threads");
+                return e;
+            }
+            logger.info("Virtual threads are not supported by this runtime, using {} platform threads", threads);
+        }
+        return newPlatformExecutor(threads);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import static org.atmosphere.cpr.FrameworkConfig.INJECTED_ATMOSPHERE_RESOURCE;
+
+/**
+ * The request of a connection as seen by one of its dispatched requests. An AtmosphereRequest sets and removes its
+ * attributes on the request it wraps too, so the attributes set while dispatching stay here instead of reaching the
+ * request the connection's other requests share, possibly on other threads. The connection's attributes are still
+ * read through.
+ */
+final class DispatchedHttpRequest extends HttpServletRequestWrapper {
+
+    private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+    // the connection's attributes removed for this request
+    private final Set<String> removed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    DispatchedHttpRequest(HttpServletRequest request) {
+        super(request);
+        // a new request, the resource injected for an earlier one doesn't apply
+        removed.add(INJECTED_ATMOSPHERE_RESOURCE);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        Object value = attributes.get(name);
+        if (value != null || removed.contains(name)) {
+            return value;
+        }
+        return super.getAttribute(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        Set<String> names = new LinkedHashSet<String>();
+        for (Enumeration<String> e = super.getAttributeNames(); e.hasMoreElements(); ) {
+            String name = e.nextElement();
+            if (!removed.contains(name)) {
+                names.add(name);
+            }
+        }
+        names.addAll(attributes.keySet());
+        return Collections.enumeration(names);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+        removed.add(name);
+    }
+}
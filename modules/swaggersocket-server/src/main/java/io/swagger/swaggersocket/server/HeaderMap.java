@@ -0,0 +1,157 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A case-insensitive header map backed by two arrays. Requests carry a handful of headers, so a linear scan
+ * is cheaper than the tree or hash entries of the general purpose maps.
+ */
+final class HeaderMap extends AbstractMap<String, String> {
+
+    private String[] names;
+    private String[] values;
+    private int size;
+
+    HeaderMap(int capacity) {
+        names = new String[Math.max(capacity, 4)];
+        values = new String[names.length];
+    }
+
+    private int indexOf(Object name) {
+        if (name instanceof String) {
+            String n = (String) name;
+            for (int i = 0; i < size; i++) {
+                if (names[i].equalsIgnoreCase(n)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public String get(Object name) {
+        int i = indexOf(name);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public String put(String name, String value) {
+        int i = indexOf(name);
+        if (i >= 0) {
+            String previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public String remove(Object name) {
+        int i = indexOf(name);
+        return i < 0 ? null : removeAt(i);
+    }
+
+    private String removeAt(int i) {
+        String previous = values[i];
+        size--;
+        System.arraycopy(names, i + 1, names, i, size - i);
+        System.arraycopy(values, i + 1, values, i, size - i);
+        names[size] = null;
+        values[size] = null;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+                    private int next;
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next++;
+                        final int i = last;
+                        return new SimpleEntry<String, String>(names[i], values[i]) {
+                            @Override
+                            public String setValue(String value) {
+                                values[i] = value;
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        removeAt(last);
+                        next = last;
+                        last = -1;
+                    }
+                };
+            }
+        };
+    }
+}
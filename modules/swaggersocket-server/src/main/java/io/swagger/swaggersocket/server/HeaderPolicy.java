@@ -0,0 +1,69 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which response headers are copied into a SwaggerSocket {@link io.swagger.swaggersocket.protocol.Response}:
+ * those matching the included pattern and not the excluded one. Content-Type is always left out as it is added
+ * with the body. Header names come from a small set, so each decision is cached per name.
+ */
+public final class HeaderPolicy {
+
+    private static final int DEFAULT_CACHE_SIZE = 512;
+
+    private final Pattern included;
+    private final Pattern excluded;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Boolean> decisions = new ConcurrentHashMap<String, Boolean>();
+
+    public HeaderPolicy(Pattern included, Pattern excluded) {
+        this(included, excluded, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param included   the headers to copy, none if null
+     * @param excluded   the headers never to copy, may be null
+     * @param maxEntries the number of header names whose decision is cached, names beyond are matched every time
+     */
+    public HeaderPolicy(Pattern included, Pattern excluded, int maxEntries) {
+        this.included = included;
+        this.excluded = excluded;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return true if the header is copied into the response
+     */
+    public boolean accept(String name) {
+        if (included == null || name == null) {
+            return false;
+        }
+        Boolean d = decisions.get(name);
+        if (d == null) {
+            d = !"Content-Type".equalsIgnoreCase(name)
+                    && included.matcher(name).matches()
+                    && !(excluded != null && excluded.matcher(name).matches());
+            if (decisions.size() < maxEntries) {
+                decisions.put(name, d);
+            }
+        }
+        return d;
+    }
+}
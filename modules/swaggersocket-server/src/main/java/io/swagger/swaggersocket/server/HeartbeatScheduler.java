@@ -0,0 +1,192 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the heartbeats of all connections from a single hashed wheel timer. A connection is only visited when its
+ * own beat is due, and the beat is skipped when the connection had traffic within the interval.
+ */
+final class HeartbeatScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatScheduler.class);
+
+    /**
+     * The connection a heartbeat is written to.
+     */
+    interface Target {
+        /**
+         * Write the heartbeat.
+         *
+         * @return false if the connection is gone and must not be scheduled anymore
+         */
+        boolean beat();
+    }
+
+    /**
+     * A scheduled connection.
+     */
+    final class Handle {
+        private final Target target;
+        private volatile long lastActivity;
+        private volatile boolean cancelled;
+        // only accessed by the wheel thread
+        private long rounds;
+
+        private Handle(Target target) {
+            this.target = target;
+            this.lastActivity = now();
+        }
+
+        /**
+         * Record traffic on the connection, postponing its next beat.
+         */
+        void touch() {
+            lastActivity = now();
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long intervalMillis;
+    private final long tickMillis;
+    private final List<List<Handle>> wheel;
+    private final Queue<Handle> added = new ConcurrentLinkedQueue<Handle>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param intervalMillis the time between two beats of a connection
+     * @param tickMillis     the resolution of the wheel
+     * @param wheelSize      the number of buckets of the wheel
+     */
+    HeartbeatScheduler(long intervalMillis, long tickMillis, int wheelSize) {
+        this.intervalMillis = intervalMillis;
+        this.tickMillis = tickMillis;
+        this.wheel = new ArrayList<List<Handle>>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ArrayList<Handle>());
+        }
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "SwaggerSocket-Heartbeat");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedule the heartbeats of a connection, the first one an interval from now.
+     */
+    Handle add(Target target) {
+        Handle h = new Handle(target);
+        added.offer(h);
+        return h;
+    }
+
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void work() {
+        long start = now();
+        while (running) {
+            long deadline = start + (tick + 1) * tickMillis;
+            long sleep = deadline - now();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            Handle h;
+            while ((h = added.poll()) != null) {
+                place(h, intervalMillis);
+            }
+            expire(wheel.get((int) (tick % wheel.size())));
+            tick++;
+        }
+    }
+
+    private void expire(List<Handle> bucket) {
+        List<Handle> due = null;
+        for (Iterator<Handle> i = bucket.iterator(); i.hasNext(); ) {
+            Handle h = i.next();
+            if (h.cancelled) {
+                i.remove();
+            } else if (h.rounds > 0) {
+                h.rounds--;
+            } else {
+                i.remove();
+                if (due == null) {
+                    due = new ArrayList<Handle>();
+                }
+                due.add(h);
+            }
+        }
+        if (due == null) {
+            return;
+        }
+
+        long now = now();
+        for (Handle h : due) {
+            long idle = now - h.lastActivity;
+            if (idle < intervalMillis) {
+                place(h, intervalMillis - idle);
+                continue;
+            }
+            try {
+                if (!h.target.beat()) {
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                logger.debug("Unable to write heartbeat", e);
+                continue;
+            }
+            place(h, intervalMillis);
+        }
+    }
+
+    private void place(Handle h, long delayMillis) {
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        h.rounds = (ticks - 1) / wheel.size();
+        wheel.get((int) ((tick + ticks) % wheel.size())).add(h);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Matches the responses of a long-polling connection with its suspended requests without blocking. A response
+ * resumes a waiting request right away or stays in a bounded outbox, and the next request takes all of the
+ * outbox at once. Responses taken together are written back to back, the clients split them again with the
+ * message length added by the {@code TrackMessageSizeInterceptor}.
+ */
+final class LongPollingMailbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(LongPollingMailbox.class);
+
+    private final int capacity;
+    private final Queue<byte[]> outbox = new LinkedList<byte[]>();
+    private final Queue<AtmosphereResource> waiting = new LinkedList<AtmosphereResource>();
+
+    LongPollingMailbox(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Deliver a response to a waiting request, or keep it until the next one arrives.
+     *
+     * @return false if the outbox is full, the response isn't kept then
+     */
+    boolean offer(byte[] data) {
+        return offer(data, capacity);
+    }
+
+    /**
+     * Like {@link #offer(byte[])} for the small frames answering the responses that didn't fit, they may take as
+     * many places again.
+     */
+    boolean offerRejection(byte[] data) {
+        return offer(data, 2 * capacity);
+    }
+
+    private boolean offer(byte[] data, int limit) {
+        AtmosphereResource resource;
+        synchronized (this) {
+            resource = nextWaiting();
+            if (resource == null) {
+                if (outbox.size() >= limit) {
+                    return false;
+                }
+                outbox.offer(data);
+                return true;
+            }
+        }
+        deliver(resource, data);
+        return true;
+    }
+
+    /**
+     * Drop the pending responses of a closed connection.
+     */
+    synchronized void clear() {
+        outbox.clear();
+    }
+
+    /**
+     * @return all the pending responses, null if there are none
+     */
+    synchronized byte[] drain() {
+        if (outbox.isEmpty()) {
+            return null;
+        }
+        if (outbox.size() == 1) {
+            return outbox.poll();
+        }
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        byte[] data;
+        while ((data = outbox.poll()) != null) {
+            b.write(data, 0, data.length);
+        }
+        return b.toByteArray();
+    }
+
+    /**
+     * Make a suspended request wait for the next response, unless responses are already pending.
+     *
+     * @return the pending responses the request must be resumed with, null if it is now waiting
+     */
+    synchronized byte[] park(AtmosphereResource resource) {
+        byte[] pending = drain();
+        if (pending == null) {
+            waiting.offer(resource);
+        }
+        return pending;
+    }
+
+    /**
+     * Take a waiting request away from the responses.
+     *
+     * @return false if a response already resumed it
+     */
+    synchronized boolean claim(AtmosphereResource resource) {
+        return waiting.remove(resource);
+    }
+
+    /**
+     * Write the responses and resume the request.
+     */
+    static void deliver(AtmosphereResource resource, byte[] data) {
+        logger.trace("Resuming {}", resource.uuid());
+        try {
+            OutputStream o = resource.getResponse().getResponse().getOutputStream();
+            o.write(data);
+            o.flush();
+        } catch (IOException ex) {
+            logger.warn("", ex);
+        }
+        resource.resume();
+    }
+
+    private AtmosphereResource nextWaiting() {
+        AtmosphereResource resource;
+        while ((resource = waiting.poll()) != null) {
+            if (!resource.isResumed() && !resource.isCancelled()) {
+                return resource;
+            }
+        }
+        return null;
+    }
+}
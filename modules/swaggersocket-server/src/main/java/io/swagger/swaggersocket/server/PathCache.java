@@ -0,0 +1,88 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded LRU cache of the canonical form of the request paths sent by clients, which come from a small set.
+ */
+final class PathCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * The path info, request URI and request URL of a dispatched request.
+     */
+    static final class Entry {
+        private final String baseURL;
+        private final String baseURI;
+        final String pathInfo;
+        final String requestURI;
+        final String requestURL;
+
+        private Entry(String baseURL, String baseURI, String path) {
+            this.baseURL = baseURL;
+            this.baseURI = baseURI;
+
+            String p = WHITESPACE.matcher(path).replaceAll("%20").trim();
+            if (baseURL.endsWith("/") && p.startsWith("/")) {
+                requestURL = baseURL + p.substring(1);
+            } else {
+                requestURL = baseURL + p;
+            }
+            if (baseURI.endsWith("/") && p.startsWith("/")) {
+                requestURI = baseURI + p.substring(1);
+            } else {
+                requestURI = baseURI + p;
+            }
+            pathInfo = p.startsWith("/") ? p : "/" + p;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    PathCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param baseURL the URL of the SwaggerSocket connection
+     * @param baseURI the URI of the SwaggerSocket connection
+     * @param path    the path of the SwaggerSocket request
+     */
+    Entry get(String baseURL, String baseURI, String path) {
+        Entry e;
+        synchronized (entries) {
+            e = entries.get(path);
+        }
+        if (e != null && e.baseURI.equals(baseURI) && e.baseURL.equals(baseURL)) {
+            return e;
+        }
+        e = new Entry(baseURL, baseURI, path);
+        synchronized (entries) {
+            entries.put(path, e);
+        }
+        return e;
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the responses of one connection that complete within a flush window and writes them as a single
+ * {@link ResponseMessage}. A batch is written when the window expires or as soon as it reaches the maximum size.
+ * Batches are written in order, one at a time.
+ * <p>
+ * The responses come as the frames they would have been written as on their own. JSON frames are joined without
+ * being parsed, the frames of a binary format are merged through their trees.
+ */
+final class ResponseCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCoalescer.class);
+    private static final byte[] SUFFIX = {']', '}'};
+
+    interface Sink {
+        void write(byte[] frame) throws IOException;
+    }
+
+    private final String identity;
+    private final ObjectMapper mapper;
+    // the frames of a JSON connection start with it, null for a binary format
+    private final byte[] prefix;
+    private final ScheduledExecutorService timer;
+    private final long windowMillis;
+    private final int maxBytes;
+    private final Sink sink;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ResponseCoalescer.this) {
+                scheduled = false;
+                try {
+                    flush();
+                } catch (IOException e) {
+                    logger.warn("Unable to write coalesced responses for {}", identity, e);
+                }
+            }
+        }
+    };
+
+    private List<byte[]> pending = new ArrayList<byte[]>();
+    private int pendingBytes;
+    private boolean scheduled;
+
+    /**
+     * @param mapper the mapper of the connection's data format
+     */
+    ResponseCoalescer(String identity, ObjectMapper mapper, ScheduledExecutorService timer, long windowMillis,
+                      int maxBytes, Sink sink) throws IOException {
+        this.identity = identity;
+        this.mapper = mapper;
+        if (JsonFactory.FORMAT_NAME_JSON.equals(mapper.getFactory().getFormatName())) {
+            // {"identity":"...","responses":[
+            ResponseMessage m = new ResponseMessage();
+            m.setIdentity(identity);
+            m.setResponses(Collections.<Response>emptyList());
+            byte[] empty = mapper.writeValueAsBytes(m);
+            prefix = new byte[empty.length - SUFFIX.length];
+            System.arraycopy(empty, 0, prefix, 0, prefix.length);
+        } else {
+            prefix = null;
+        }
+        this.timer = timer;
+        this.windowMillis = windowMillis;
+        this.maxBytes = maxBytes;
+        this.sink = sink;
+    }
+
+    /**
+     * Queue a response.
+     *
+     * @param frame the {@link ResponseMessage} of the response, serialized in the connection's data format
+     * @param size  the size of its body, counted against the maximum batch size
+     */
+    synchronized void add(byte[] frame, int size) throws IOException {
+        pending.add(frame);
+        pendingBytes += size;
+        if (pendingBytes >= maxBytes) {
+            flush();
+        } else if (!scheduled) {
+            scheduled = true;
+            timer.schedule(flushTask, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write the pending responses, if any.
+     */
+    synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<byte[]> frames = pending;
+        pending = new ArrayList<byte[]>();
+        pendingBytes = 0;
+        sink.write(frames.size() == 1 ? frames.get(0) : merge(frames));
+    }
+
+    private byte[] merge(List<byte[]> frames) throws IOException {
+        byte[] joined = prefix == null ? null : join(frames);
+        if (joined != null) {
+            return joined;
+        }
+        ObjectNode message = mapper.readValue(frames.get(0), ObjectNode.class);
+        for (byte[] frame : frames.subList(1, frames.size())) {
+            message.withArray("responses").addAll(mapper.readValue(frame, ObjectNode.class).withArray("responses"));
+        }
+        return mapper.writeValueAsBytes(message);
+    }
+
+    /**
+     * @return the frames with their responses in one array, null if one of them isn't a frame of this connection
+     */
+    private byte[] join(List<byte[]> frames) {
+        int size = prefix.length + SUFFIX.length - 1;
+        for (byte[] frame : frames) {
+            if (!isEnveloped(frame)) {
+                return null;
+            }
+            size += frame.length - prefix.length - SUFFIX.length + 1;
+        }
+        byte[] joined = new byte[size];
+        System.arraycopy(prefix, 0, joined, 0, prefix.length);
+        int pos = prefix.length;
+        for (byte[] frame : frames) {
+            if (pos > prefix.length) {
+                joined[pos++] = ',';
+            }
+            int length = frame.length - prefix.length - SUFFIX.length;
+            System.arraycopy(frame, prefix.length, joined, pos, length);
+            pos += length;
+        }
+        System.arraycopy(SUFFIX, 0, joined, pos, SUFFIX.length);
+        return joined;
+    }
+
+    private boolean isEnveloped(byte[] frame) {
+        if (frame.length <= prefix.length + SUFFIX.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (frame[i] != prefix[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < SUFFIX.length; i++) {
+            if (frame[frame.length - SUFFIX.length + i] != SUFFIX[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.swagger.swaggersocket.protocol.Header;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a JSON {@link ResponseMessage} holding a single response straight from the bytes of its body, producing
+ * the same frame as the {@link com.fasterxml.jackson.databind.ObjectMapper}. UTF-8 bodies are escaped without being
+ * decoded, raw JSON bodies are copied as they are.
+ * <p>
+ * The generators and their 8 KB output buffers are shared by all the threads writing frames, virtual threads
+ * included, through a bounded pool: a frame takes one for the time of its serialization. A larger frame grows into
+ * an array borrowed from the {@link BufferPool} and given back once the frame is copied out.
+ */
+public final class ResponseEnvelopeWriter {
+
+    private static final int INITIAL_SIZE = 8 * 1024;
+    private static final int MAX_SLOTS = Runtime.getRuntime().availableProcessors() * 2;
+    private static final JsonFactory factory = new JsonFactory();
+    private static final Queue<Slot> slots = new ConcurrentLinkedQueue<Slot>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private ResponseEnvelopeWriter() {
+    }
+
+    /**
+     * Write the frame.
+     *
+     * @param identity the connection identity
+     * @param response the response, its message body is ignored
+     * @param body     the body bytes
+     * @param offset   the offset of the body
+     * @param length   the length of the body, no body is written if 0
+     * @param charset  the encoding of the body
+     * @param raw      true to embed the body as a JSON value, it must then be valid UTF-8 JSON
+     * @param pool     lends the arrays of the frames larger than 8 KB
+     * @return the serialized frame
+     */
+    public static byte[] write(String identity, Response response, byte[] body, int offset, int length,
+                               String charset, boolean raw, BufferPool pool) throws IOException {
+        Slot slot = slots.poll();
+        if (slot == null) {
+            slot = new Slot();
+        } else {
+            pooled.decrementAndGet();
+        }
+        boolean reusable = false;
+        try {
+            slot.out.pool = pool;
+            // room for the body and the envelope around it, escaping may still grow it
+            slot.out.ensure(length + 512);
+            JsonGenerator gen = slot.gen;
+            gen.writeStartObject();
+            gen.writeStringField("identity", identity);
+            gen.writeArrayFieldStart("responses");
+            gen.writeStartObject();
+
+            gen.writeArrayFieldStart("headers");
+            if (response.getHeaders() != null) {
+                for (Header h : response.getHeaders()) {
+                    gen.writeStartObject();
+                    gen.writeStringField("name", h.getName());
+                    gen.writeStringField("value", h.getValue());
+                    gen.writeEndObject();
+                }
+            }
+            gen.writeEndArray();
+            if (response.getPath() != null) {
+                gen.writeStringField("path", response.getPath());
+            }
+            if (response.getUuid() != null) {
+                gen.writeStringField("uuid", response.getUuid());
+            }
+            if (length > 0) {
+                gen.writeFieldName("messageBody");
+                if (raw) {
+                    // let the generator emit the separator, then append the body behind its back
+                    gen.writeRawValue("");
+                    gen.flush();
+                    slot.out.write(body, offset, length);
+                } else if (isUTF8(charset)) {
+                    gen.writeUTF8String(body, offset, length);
+                } else {
+                    gen.writeString(new String(body, offset, length, charset));
+                }
+            }
+            gen.writeBooleanField("last", response.isLast());
+            if (response.getReasonPhrase() != null) {
+                gen.writeStringField("reasonPhrase", response.getReasonPhrase());
+            }
+            gen.writeNumberField("statusCode", response.getStatusCode());
+
+            gen.writeEndObject();
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.flush();
+            byte[] frame = slot.out.toByteArray();
+            reusable = true;
+            return frame;
+        } finally {
+            slot.out.reset();
+            // a generator left in the middle of a frame is dropped
+            if (reusable && pooled.incrementAndGet() <= MAX_SLOTS) {
+                slots.offer(slot);
+            } else if (reusable) {
+                pooled.decrementAndGet();
+            }
+        }
+    }
+
+    static boolean isUTF8(String charset) {
+        return charset == null || "UTF-8".equalsIgnoreCase(charset) || "UTF8".equalsIgnoreCase(charset);
+    }
+
+    private static final class Slot {
+        final FrameBuffer out = new FrameBuffer();
+        final JsonGenerator gen;
+
+        Slot() {
+            try {
+                gen = factory.createGenerator(out, JsonEncoding.UTF8).setRootValueSeparator(null);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * An unsynchronized growable buffer, used by one frame at a time.
+     */
+    private static final class FrameBuffer extends OutputStream {
+        private final byte[] initial = new byte[INITIAL_SIZE];
+        private byte[] buf = initial;
+        private int count;
+        private BufferPool pool;
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        void reset() {
+            count = 0;
+            release();
+            buf = initial;
+            pool = null;
+        }
+
+        void ensure(int len) {
+            if (count + len > buf.length) {
+                int size = Math.max(buf.length << 1, count + len);
+                byte[] b = pool != null ? pool.acquire(size) : new byte[size];
+                System.arraycopy(buf, 0, b, 0, count);
+                release();
+                buf = b;
+            }
+        }
+
+        private void release() {
+            if (buf != initial && pool != null) {
+                pool.release(buf);
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.FrameworkConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The state of one SwaggerSocket connection. It is attached once, to the WebSocket request or to the HTTP session
+ * of the other transports, and replaced as a whole when the client hands shake again.
+ */
+final class SwaggerSocketConnection {
+
+    private final LongPollingMailbox mailbox;
+    private final SwaggerSocketMetrics metrics;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ConcurrentMap<String, Transaction> transactions = new ConcurrentHashMap<String, Transaction>();
+    private final ConcurrentMap<String, InFlight> inFlight = new ConcurrentHashMap<String, InFlight>();
+    private volatile String identity;
+    private volatile String dataFormat;
+    private volatile ResponseCoalescer coalescer;
+    private volatile HeartbeatScheduler.Handle heartbeat;
+    private volatile Semaphore credits;
+    private volatile Semaphore chunkSlots;
+
+    /**
+     * @param outboxSize the number of long-polling responses kept while no request is suspended
+     * @param metrics    counts the connection once it has an identity, and its requests in flight
+     */
+    SwaggerSocketConnection(int outboxSize, SwaggerSocketMetrics metrics) {
+        mailbox = new LongPollingMailbox(outboxSize);
+        this.metrics = metrics;
+    }
+
+    /**
+     * The identity handed out with the handshake, null until then.
+     */
+    String getIdentity() {
+        return identity;
+    }
+
+    void setIdentity(String identity) {
+        String previous = this.identity;
+        this.identity = identity;
+        if (previous == null && identity != null && !closed.get()) {
+            metrics.connectionOpened();
+        }
+    }
+
+    /**
+     * The suspended long-polling requests and the responses waiting for them.
+     */
+    LongPollingMailbox getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * The negotiated binary data format, null for JSON.
+     */
+    String getDataFormat() {
+        return dataFormat;
+    }
+
+    void setDataFormat(String dataFormat) {
+        this.dataFormat = dataFormat;
+    }
+
+    ResponseCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    void setCoalescer(ResponseCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    HeartbeatScheduler.Handle getHeartbeat() {
+        return heartbeat;
+    }
+
+    void setHeartbeat(HeartbeatScheduler.Handle heartbeat) {
+        HeartbeatScheduler.Handle previous = this.heartbeat;
+        this.heartbeat = heartbeat;
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Limit the number of requests in flight.
+     *
+     * @param credits the number of requests, 0 for no limit
+     */
+    void setCredits(int credits) {
+        this.credits = credits > 0 ? new Semaphore(credits) : null;
+    }
+
+    boolean limitsCredits() {
+        return credits != null;
+    }
+
+    /**
+     * Take credits for new requests.
+     *
+     * @return false if fewer credits are left, none is taken then
+     */
+    boolean acquireCredits(int n) {
+        Semaphore c = credits;
+        return c == null || c.tryAcquire(n);
+    }
+
+    /**
+     * Give back the credit of a request once its response is written.
+     */
+    void releaseCredit() {
+        Semaphore c = credits;
+        if (c != null) {
+            c.release();
+        }
+    }
+
+    /**
+     * Bound the chunks of the responses of this connection waiting for its writer.
+     *
+     * @param size the number of chunks written or waiting to be written at once, 0 for no bound
+     */
+    void setChunkQueue(int size) {
+        this.chunkSlots = size > 0 ? new Semaphore(size, true) : null;
+    }
+
+    /**
+     * Take a place in the queue of chunks before writing one.
+     *
+     * @return false if no place was freed within the timeout
+     */
+    boolean enqueueChunk(long timeoutMillis) throws InterruptedException {
+        Semaphore s = chunkSlots;
+        return s == null || s.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Give back the place of a chunk once written.
+     */
+    void dequeueChunk() {
+        Semaphore s = chunkSlots;
+        if (s != null) {
+            s.release();
+        }
+    }
+
+    /**
+     * Start gathering the responses of a transaction into a single {@link ResponseMessage}.
+     */
+    void begin(String transactionID, int expectedResponses) {
+        transactions.put(transactionID, new Transaction(expectedResponses));
+    }
+
+    Transaction getTransaction(String transactionID) {
+        return transactionID == null ? null : transactions.get(transactionID);
+    }
+
+    void end(String transactionID) {
+        transactions.remove(transactionID);
+    }
+
+    /**
+     * Register a request about to be dispatched on the current thread, so it can be cancelled.
+     *
+     * @param onCancel run when the request is cancelled, may be null
+     */
+    InFlight dispatching(String uuid, AtmosphereRequest request, Runnable onCancel) {
+        InFlight f = queue(uuid);
+        f.start(request, onCancel);
+        return f;
+    }
+
+    /**
+     * Register a request handed to another thread before it is dispatched, so a cancel arriving meanwhile keeps it
+     * from running. See {@link InFlight#start(AtmosphereRequest, Runnable)}.
+     */
+    InFlight queue(String uuid) {
+        InFlight f = new InFlight(uuid);
+        if (uuid != null && inFlight.put(uuid, f) == null) {
+            metrics.requestStarted();
+        }
+        return f;
+    }
+
+    /**
+     * Cancel an in-flight request.
+     *
+     * @return false if no request with this uuid is in flight
+     */
+    boolean cancel(String uuid) {
+        InFlight f = uuid == null ? null : inFlight.remove(uuid);
+        if (f == null) {
+            return false;
+        }
+        metrics.requestEnded();
+        f.cancel();
+        return true;
+    }
+
+    /**
+     * Stop the heartbeats of this connection. Closing it again does nothing.
+     *
+     * @return false if it was already closed
+     */
+    boolean close() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        setHeartbeat(null);
+        if (identity != null) {
+            metrics.connectionClosed();
+        }
+        return true;
+    }
+
+    /**
+     * A dispatched request, from its dispatch until its response is closed.
+     */
+    final class InFlight {
+        private final String uuid;
+        private AtmosphereRequest request;
+        private Runnable onCancel;
+        private Thread thread;
+        private volatile boolean cancelled;
+
+        InFlight(String uuid) {
+            this.uuid = uuid;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * The request is dispatched on the current thread.
+         *
+         * @param onCancel run when the request is cancelled from now on, may be null
+         * @return false if it was cancelled before, it must not run then
+         */
+        synchronized boolean start(AtmosphereRequest request, Runnable onCancel) {
+            if (cancelled) {
+                return false;
+            }
+            this.request = request;
+            this.onCancel = onCancel;
+            this.thread = Thread.currentThread();
+            return true;
+        }
+
+        /**
+         * Interrupt the dispatching thread, or resume the request if it was suspended. A request not started yet
+         * won't start.
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (thread != null) {
+                thread.interrupt();
+            } else if (request != null) {
+                resume();
+            }
+            if (onCancel != null) {
+                onCancel.run();
+            }
+        }
+
+        /**
+         * The dispatching thread is done with the request.
+         *
+         * @param suspended true if the request stays suspended
+         */
+        synchronized void returned(boolean suspended) {
+            thread = null;
+            if (cancelled) {
+                // don't leak the interrupt to the next task of this thread
+                Thread.interrupted();
+                if (suspended) {
+                    resume();
+                }
+            }
+            if (!suspended) {
+                done();
+            }
+        }
+
+        /**
+         * The response is complete.
+         */
+        void done() {
+            if (uuid != null && inFlight.remove(uuid, this)) {
+                metrics.requestEnded();
+            }
+        }
+
+        private void resume() {
+            Object r = request.getAttribute(FrameworkConfig.ATMOSPHERE_RESOURCE);
+            if (r instanceof AtmosphereResource && ((AtmosphereResource) r).isSuspended()) {
+                ((AtmosphereResource) r).resume();
+            }
+        }
+    }
+
+    /**
+     * The responses of a transaction completed so far.
+     */
+    static final class Transaction {
+        private int remaining;
+        private ResponseMessage message;
+
+        Transaction(int expectedResponses) {
+            this.remaining = expectedResponses;
+        }
+
+        /**
+         * Add a response.
+         *
+         * @return the message with all the responses once the last one is added, null before
+         */
+        synchronized ResponseMessage add(String identity, Response response) {
+            if (message == null) {
+                message = new ResponseMessage(identity, response);
+            } else {
+                message.response(response);
+            }
+            return --remaining <= 0 ? message : null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Hooks for tracing the lifecycle of the SwaggerSocket requests, for instance as Java Flight Recorder events with
+ * the swaggersocket-jfr module. This class does nothing; an implementation on the class path is found with
+ * {@link ServiceLoader}.
+ * <p>
+ * A timed event is started with one of the {@code xxxBegin} methods, which return null when the event is disabled,
+ * and ended with the matching method given that token. Callers skip gathering the event fields on a null token.
+ */
+public class SwaggerSocketEvents {
+
+    private static final Logger logger = LoggerFactory.getLogger(SwaggerSocketEvents.class);
+
+    public static final SwaggerSocketEvents NONE = new SwaggerSocketEvents();
+
+    /**
+     * @return the first implementation registered as a service, otherwise {@link #NONE}
+     */
+    public static SwaggerSocketEvents load() {
+        try {
+            Iterator<SwaggerSocketEvents> it = ServiceLoader.load(SwaggerSocketEvents.class,
+                    SwaggerSocketEvents.class.getClassLoader()).iterator();
+            if (it.hasNext()) {
+                SwaggerSocketEvents events = it.next();
+                logger.info("SwaggerSocket events traced with {}", events.getClass().getName());
+                return events;
+            }
+        } catch (Throwable t) {
+            // e.g. the JFR implementation on a runtime without jdk.jfr
+            logger.warn("Unable to load the SwaggerSocket events", t);
+        }
+        return NONE;
+    }
+
+    public Object handshakeBegin() {
+        return null;
+    }
+
+    /**
+     * @param dataFormat the negotiated data format, null for JSON
+     */
+    public void handshake(Object token, String identity, String transport, String dataFormat) {
+    }
+
+    public Object parseBegin() {
+        return null;
+    }
+
+    /**
+     * @param type     the kind of message, e.g. Message or HandshakeMessage
+     * @param requests the number of requests of the message
+     */
+    public void parse(Object token, String transport, String type, int requests) {
+    }
+
+    public Object dispatchBegin() {
+        return null;
+    }
+
+    /**
+     * @param bytesIn the bytes the request body took in its frame
+     */
+    public void dispatch(Object token, String identity, String uuid, String method, String path, int status,
+                         long bytesIn) {
+    }
+
+    public Object wrapBegin() {
+        return null;
+    }
+
+    /**
+     * @param bytes the length of the response frame
+     */
+    public void wrap(Object token, String identity, String uuid, String path, long bytes) {
+    }
+
+    public void heartbeat(String identity, String transport, long bytes) {
+    }
+
+    public void close(String identity, String reason) {
+    }
+}
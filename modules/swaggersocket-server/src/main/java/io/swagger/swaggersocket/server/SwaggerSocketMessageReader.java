@@ -0,0 +1,179 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import io.swagger.swaggersocket.protocol.Cancel;
+import io.swagger.swaggersocket.protocol.CancelMessage;
+import io.swagger.swaggersocket.protocol.Close;
+import io.swagger.swaggersocket.protocol.CloseMessage;
+import io.swagger.swaggersocket.protocol.Handshake;
+import io.swagger.swaggersocket.protocol.HandshakeMessage;
+import io.swagger.swaggersocket.protocol.JsonBody;
+import io.swagger.swaggersocket.protocol.Message;
+import io.swagger.swaggersocket.protocol.Request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reads a single SwaggerSocket frame from a stream in one pass. The top-level key decides the message type
+ * and the parser is handed to the matching deserializer without buffering the frame into a String first.
+ * <p>
+ * The bytes the body of each {@link Request} took in the frame are measured on the way, see {@link #bodyLength(Request)}.
+ */
+public final class SwaggerSocketMessageReader {
+
+    private final ObjectMapper mapper;
+
+    public SwaggerSocketMessageReader(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * @return the number of bytes the body of a request took in the frame it was read from, -1 if it wasn't read by
+     * a reader or from a byte stream
+     */
+    public static long bodyLength(Request request) {
+        return request instanceof MeasuredRequest ? ((MeasuredRequest) request).bodyLength : -1;
+    }
+
+    /**
+     * Read the next frame.
+     *
+     * @param in the frame's bytes
+     * @return a {@link HandshakeMessage}, a {@link CloseMessage}, a {@link CancelMessage} or a {@link Message}, or null
+     * if the stream is empty
+     * @throws IOException if the frame is not well formed
+     */
+    public Object read(InputStream in) throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(in);
+        try {
+            return read(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Read the next frame from an already created parser.
+     */
+    public Object read(JsonParser parser) throws IOException {
+        JsonToken t = parser.nextToken();
+        if (t == null) {
+            return null;
+        }
+        if (t != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected a SwaggerSocket message but got " + t, parser.getCurrentLocation());
+        }
+
+        t = parser.nextToken();
+        if (t == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if ("handshake".equals(name)) {
+                parser.nextToken();
+                HandshakeMessage handshakeMessage = new HandshakeMessage();
+                handshakeMessage.setHandshake(mapper.readValue(parser, Handshake.class));
+                return handshakeMessage;
+            } else if ("close".equals(name)) {
+                parser.nextToken();
+                CloseMessage closeMessage = new CloseMessage();
+                closeMessage.setClose(mapper.readValue(parser, Close.class));
+                return closeMessage;
+            } else if ("cancel".equals(name)) {
+                parser.nextToken();
+                return new CancelMessage(mapper.readValue(parser, Cancel.class));
+            }
+        }
+        // Positioned on the first field (identity or requests), the bean deserializer continues from there.
+        return mapper.readValue(parser, MeasuredMessage.class);
+    }
+
+    /**
+     * A message whose requests are read as {@link MeasuredRequest}s.
+     */
+    static final class MeasuredMessage extends Message {
+        @Override
+        @JsonDeserialize(contentAs = MeasuredRequest.class)
+        public void setRequests(List<Request> requests) {
+            super.setRequests(requests);
+        }
+    }
+
+    /**
+     * A request with the bytes its body took in the frame.
+     */
+    static final class MeasuredRequest extends Request {
+        private long bodyLength = -1;
+
+        @Override
+        @JsonDeserialize(using = BodyDeserializer.class)
+        public void setMessageBody(Object messageBody) {
+            if (messageBody instanceof MeasuredBody) {
+                MeasuredBody m = (MeasuredBody) messageBody;
+                super.setMessageBody(m.body);
+                bodyLength = m.length;
+            } else {
+                super.setMessageBody(messageBody);
+                bodyLength = -1;
+            }
+        }
+    }
+
+    private static final class MeasuredBody {
+        private final Object body;
+        private final long length;
+
+        private MeasuredBody(Object body, long length) {
+            this.body = body;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads a message body as {@link JsonBody.Deserializer} does and measures the bytes it took in the frame.
+     */
+    static final class BodyDeserializer extends JsonDeserializer<Object> {
+        private final JsonBody.Deserializer body = new JsonBody.Deserializer();
+
+        @Override
+        public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+            // Only the parsers reading bytes know their offsets. The token location of a field's value may still be
+            // the one of its name, but the parser is past the first byte of a string or a structure by now.
+            JsonToken t = p.getCurrentToken();
+            long start = p.getCurrentLocation().getByteOffset();
+            long length = t != JsonToken.VALUE_STRING && !t.isStructStart() ? p.getTextLength() : -1;
+            Object value = body.deserialize(p, ctxt);
+            if (length < 0) {
+                long end = p.getCurrentLocation().getByteOffset();
+                if (start <= 0 || end < start) {
+                    return value;
+                }
+                length = end - start + 1;
+            }
+            return new MeasuredBody(value, length);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-request metrics of a {@link SwaggerSocketProtocolInterceptor}: counters and latency histograms per path
+ * template and per transport, and gauges for the open connections, the requests in flight, the heartbeats and the
+ * responses that didn't fit in the outbox of a long-polling connection.
+ * <p>
+ * Path templates replace the numeric and uuid segments of a path by {id}. Paths above a few hundred templates are
+ * counted together under "other" to keep the memory bounded.
+ */
+public class SwaggerSocketMetrics implements SwaggerSocketMetricsMBean {
+
+    static final int MAX_TEMPLATES = 256;
+    static final int MAX_PATHS = 1024;
+    static final String OTHER = "other";
+
+    // the paths seen so far, by method, mapped to the stats of their template
+    private final ConcurrentMap<String, ConcurrentMap<String, PathStats>> paths =
+            new ConcurrentHashMap<String, ConcurrentMap<String, PathStats>>();
+    private final ConcurrentMap<String, PathStats> templates = new ConcurrentHashMap<String, PathStats>();
+    private final ConcurrentMap<String, TransportStats> transports = new ConcurrentHashMap<String, TransportStats>();
+    private final AtomicInteger pathCount = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong outboxOverflows = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record the requests, enabled by default. The gauges are kept either way.
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the stats of the template of the path
+     */
+    public PathStats path(String method, String path) {
+        ConcurrentMap<String, PathStats> byPath = paths.get(method);
+        if (byPath == null) {
+            byPath = new ConcurrentHashMap<String, PathStats>();
+            ConcurrentMap<String, PathStats> previous = paths.putIfAbsent(method, byPath);
+            if (previous != null) {
+                byPath = previous;
+            }
+        }
+        PathStats stats = byPath.get(path);
+        if (stats == null) {
+            stats = templateStats(method + " " + template(path));
+            if (pathCount.get() < MAX_PATHS && byPath.putIfAbsent(path, stats) == null) {
+                pathCount.incrementAndGet();
+            }
+        }
+        return stats;
+    }
+
+    private PathStats templateStats(String key) {
+        PathStats stats = templates.get(key);
+        if (stats == null) {
+            if (templates.size() >= MAX_TEMPLATES) {
+                key = OTHER;
+            }
+            stats = new PathStats(key);
+            PathStats previous = templates.putIfAbsent(key, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the path without its query and with {id} for its numeric and uuid segments
+     */
+    static String template(String path) {
+        if (path == null) {
+            return "/";
+        }
+        int q = path.indexOf('?');
+        if (q >= 0) {
+            path = path.substring(0, q);
+        }
+        StringBuilder b = null;
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                if (isId(path, start, i)) {
+                    if (b == null) {
+                        b = new StringBuilder(path.length()).append(path, 0, start);
+                    }
+                    b.append("{id}");
+                } else if (b != null) {
+                    b.append(path, start, i);
+                }
+                if (b != null && i < path.length()) {
+                    b.append('/');
+                }
+                start = i + 1;
+            }
+        }
+        return b == null ? path : b.toString();
+    }
+
+    private static boolean isId(String path, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        boolean digits = true;
+        boolean hex = end - start >= 16;
+        for (int i = start; i < end && (digits || hex); i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                digits = false;
+                hex &= (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-';
+            }
+        }
+        return digits || hex;
+    }
+
+    /**
+     * @return the stats of the transport
+     */
+    public TransportStats transport(String name) {
+        TransportStats stats = transports.get(name);
+        if (stats == null) {
+            stats = new TransportStats(name);
+            TransportStats previous = transports.putIfAbsent(name, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    void requestEnded() {
+        inFlight.decrementAndGet();
+    }
+
+    void heartbeat() {
+        heartbeats.incrementAndGet();
+    }
+
+    void outboxOverflow() {
+        outboxOverflows.incrementAndGet();
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public int getInFlightRequests() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getHeartbeats() {
+        return heartbeats.get();
+    }
+
+    @Override
+    public long getOutboxOverflows() {
+        return outboxOverflows.get();
+    }
+
+    @Override
+    public String[] getPaths() {
+        return lines(templates);
+    }
+
+    @Override
+    public String[] getTransports() {
+        return lines(transports);
+    }
+
+    private static String[] lines(Map<String, ?> stats) {
+        List<String> lines = new ArrayList<String>();
+        for (Object s : new TreeMap<String, Object>(stats).values()) {
+            lines.add(s.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    public void reset() {
+        for (PathStats s : templates.values()) {
+            s.reset();
+        }
+        for (TransportStats s : transports.values()) {
+            s.reset();
+        }
+        heartbeats.set(0);
+        outboxOverflows.set(0);
+    }
+
+    /**
+     * The requests of one path template.
+     */
+    public static final class PathStats {
+        private final String template;
+        // 1xx to 5xx, anything else at 0
+        private final AtomicLongArray statuses = new AtomicLongArray(6);
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final LatencyHistogram dispatch = new LatencyHistogram();
+        private final LatencyHistogram serialization = new LatencyHistogram();
+
+        PathStats(String template) {
+            this.template = template;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * Record a dispatched request.
+         *
+         * @param status        the status of its response
+         * @param bodyLength    the bytes its body took in the frame
+         * @param dispatchNanos the time spent in the framework
+         */
+        public void request(int status, long bodyLength, long dispatchNanos) {
+            int c = status / 100;
+            statuses.incrementAndGet(c > 0 && c < 6 ? c : 0);
+            if (bodyLength > 0) {
+                bytesIn.addAndGet(bodyLength);
+            }
+            dispatch.record(dispatchNanos);
+        }
+
+        /**
+         * Record a serialized response frame.
+         */
+        public void response(long frameLength, long serializationNanos) {
+            bytesOut.addAndGet(frameLength);
+            serialization.record(serializationNanos);
+        }
+
+        public long getRequests() {
+            return dispatch.getCount();
+        }
+
+        /**
+         * @param statusClass 1 to 5 for 1xx to 5xx
+         */
+        public long getStatuses(int statusClass) {
+            return statuses.get(statusClass);
+        }
+
+        public long getBytesIn() {
+            return bytesIn.get();
+        }
+
+        public long getBytesOut() {
+            return bytesOut.get();
+        }
+
+        public LatencyHistogram getDispatch() {
+            return dispatch;
+        }
+
+        public LatencyHistogram getSerialization() {
+            return serialization;
+        }
+
+        void reset() {
+            for (int i = 0; i < statuses.length(); i++) {
+                statuses.set(i, 0);
+            }
+            bytesIn.set(0);
+            bytesOut.set(0);
+            dispatch.reset();
+            serialization.reset();
+        }
+
+        @Override
+        public String toString() {
+            return template + ": requests=" + getRequests()
+                    + " 2xx=" + statuses.get(2) + " 3xx=" + statuses.get(3)
+                    + " 4xx=" + statuses.get(4) + " 5xx=" + statuses.get(5)
+                    + " in=" + bytesIn.get() + " out=" + bytesOut.get()
+                    + " dispatch[" + dispatch + "] serialization[" + serialization + "]";
+        }
+    }
+
+    /**
+     * The messages received on one transport.
+     */
+    public static final class TransportStats {
+        private final String transport;
+        private final LatencyHistogram parse = new LatencyHistogram();
+        private final LatencyHistogram dispatch = new LatencyHistogram();
+        private final LatencyHistogram serialization = new LatencyHistogram();
+
+        TransportStats(String transport) {
+            this.transport = transport;
+        }
+
+        public String getTransport() {
+            return transport;
+        }
+
+        /**
+         * Record a received message.
+         */
+        public void message(long parseNanos) {
+            parse.record(parseNanos);
+        }
+
+        /**
+         * Record a dispatched request.
+         */
+        public void request(long dispatchNanos) {
+            dispatch.record(dispatchNanos);
+        }
+
+        /**
+         * Record a serialized response frame.
+         */
+        public void response(long serializationNanos) {
+            serialization.record(serializationNanos);
+        }
+
+        public long getMessages() {
+            return parse.getCount();
+        }
+
+        public LatencyHistogram getParse() {
+            return parse;
+        }
+
+        public LatencyHistogram getDispatch() {
+            return dispatch;
+        }
+
+        public LatencyHistogram getSerialization() {
+            return serialization;
+        }
+
+        void reset() {
+            parse.reset();
+            dispatch.reset();
+            serialization.reset();
+        }
+
+        @Override
+        public String toString() {
+            return transport + ": messages=" + getMessages() + " parse[" + parse + "] dispatch[" + dispatch
+                    + "] serialization[" + serialization + "]";
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+/**
+ * The JMX view of {@link SwaggerSocketMetrics}.
+ */
+public interface SwaggerSocketMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getConnections();
+
+    int getInFlightRequests();
+
+    long getHeartbeats();
+
+    /**
+     * @return the responses rejected as the outbox of their long-polling connection was full
+     */
+    long getOutboxOverflows();
+
+    /**
+     * @return one line per path template: requests, status classes, bytes and latencies
+     */
+    String[] getPaths();
+
+    /**
+     * @return one line per transport: messages and latencies
+     */
+    String[] getTransports();
+
+    /**
+     * Clear the counters and histograms, the gauges are kept.
+     */
+    void reset();
+}
@@ -32,15 +32,19 @@ import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.AtmosphereResourceEvent;
 import org.atmosphere.cpr.AtmosphereResourceEventListenerAdapter;
 import org.atmosphere.cpr.AtmosphereResponse;
-import org.atmosphere.cpr.Broadcaster;
-import org.atmosphere.cpr.DefaultBroadcaster;
+import org.atmosphere.websocket.WebSocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.swagger.swaggersocket.protocol.Cancel;
+import io.swagger.swaggersocket.protocol.CancelMessage;
 import io.swagger.swaggersocket.protocol.CloseMessage;
+import io.swagger.swaggersocket.protocol.DataFormat;
+import io.swagger.swaggersocket.protocol.Handshake;
 import io.swagger.swaggersocket.protocol.HandshakeMessage;
 import io.swagger.swaggersocket.protocol.Header;
 import io.swagger.swaggersocket.protocol.Heartbeat;
+import io.swagger.swaggersocket.protocol.JsonBody;
 import io.swagger.swaggersocket.protocol.Message;
 import io.swagger.swaggersocket.protocol.ProtocolBase;
 import io.swagger.swaggersocket.protocol.QueryString;
@@ -50,61 +54,165 @@ import io.swagger.swaggersocket.protocol.ResponseMessage;
 import io.swagger.swaggersocket.protocol.StatusMessage;
 import io.swagger.swaggersocket.protocol.Response.Builder;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
-import static org.atmosphere.cpr.FrameworkConfig.INJECTED_ATMOSPHERE_RESOURCE;
-
 @AtmosphereInterceptorService
 public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapter {
 
     private final static String SWAGGER_SOCKET_DISPATCHED = "request.dispatched";
-    private final static String IDENTITY = "swaggersocket.identity";
-    private final static String RESPONSE_COUNTER = "-ResponseCountNumber";
-    private final static String SUSPENDED_RESPONSE = "-PendingResource";
+    private final static String SWAGGER_SOCKET_REQUEST = "swaggerSocketRequest";
+    private final static String TRANSACTION_IDENTITY = "swaggerSocketTransaction";
+    private final static String CONNECTION = "swaggersocket.connection";
+    private final static String REQUEST_URL = "swaggersocket.requestURL";
+    private final static String PATH_METRICS = "swaggersocket.pathMetrics";
+    private final static String TRANSPORT_METRICS = "swaggersocket.transportMetrics";
+    private final static byte[] HEARTBEAT_PREFIX = {'h', 'e', 'a', 'r', 't', 'b', 'e', 'a', 't', '-'};
 
 
     private static final Logger logger = LoggerFactory.getLogger(SwaggerSocketProtocolInterceptor.class);
+    private static final PathCache paths = new PathCache(1024);
     private final ObjectMapper mapper;
+    private final SwaggerSocketMessageReader reader;
+    private final Map<String, ObjectMapper> binaryMappers = new HashMap<String, ObjectMapper>();
+    private final Map<String, SwaggerSocketMessageReader> binaryReaders = new HashMap<String, SwaggerSocketMessageReader>();
     private final AsyncIOInterceptor interceptor = new Interceptor();
-    private final ThreadLocal<Request> ssRequest = new ThreadLocal<Request>();
-    private final ThreadLocal<String> transactionIdentity = new ThreadLocal<String>();
-    private Broadcaster heartbeat;
+    private final SwaggerSocketMetrics metrics = new SwaggerSocketMetrics();
+    private SwaggerSocketEvents events = SwaggerSocketEvents.load();
+    private HeartbeatScheduler heartbeats;
+    private ExecutorService executor;
+    private volatile boolean stopping;
+    private ScheduledExecutorService coalesceTimer;
 
     private boolean lazywrite;
+    private boolean paralleldispatch;
+    private boolean virtualthreads;
+    private boolean binaryformats = true;
+    private boolean rawjson;
+    private int heartbeatinterval = 60;
+    private int outboxsize = 1024;
+    private long bufferpoolsize = 16 * 1024 * 1024;
+    private int maxinflight;
+    private int maxchunksize;
+    private int chunkqueuesize = 16;
+    private long chunkwritetimeout = 30000;
+    private volatile BufferPool bufferPool;
+    private int coalescewindow;
+    private int coalescemaxbytes = 64 * 1024;
     private boolean emptyentity;
     private Pattern includedheaders;
     private Pattern excludedheaders;
+    private volatile HeaderPolicy headerPolicy = new HeaderPolicy(null, null);
 
     public SwaggerSocketProtocolInterceptor() {
         this.mapper = new ObjectMapper();
+        this.reader = new SwaggerSocketMessageReader(mapper);
+        for (String format : new String[]{DataFormat.SMILE, DataFormat.CBOR}) {
+            ObjectMapper m = DataFormat.newObjectMapper(format);
+            binaryMappers.put(format, m);
+            binaryReaders.put(format, new SwaggerSocketMessageReader(m));
+        }
     }
 
     @Override
     public void configure(AtmosphereConfig config) {
-        heartbeat = config.getBroadcasterFactory().lookup(DefaultBroadcaster.class, "/swaggersocket.heartbeat");
-        if (heartbeat == null) {
-            heartbeat = config.getBroadcasterFactory().get(DefaultBroadcaster.class, "/swaggersocket.heartbeat");
-        }
         lazywrite = config.getInitParameter("io.swagger.swaggersocket.protocol.lazywrite", false);
         emptyentity = config.getInitParameter("io.swagger.swaggersocket.protocol.emptyentity", false);
+        paralleldispatch = config.getInitParameter("io.swagger.swaggersocket.protocol.paralleldispatch", paralleldispatch);
+        virtualthreads = config.getInitParameter("io.swagger.swaggersocket.protocol.virtualthreads", virtualthreads);
+        binaryformats = config.getInitParameter("io.swagger.swaggersocket.protocol.binaryformats", binaryformats);
+        rawjson = config.getInitParameter("io.swagger.swaggersocket.protocol.rawjson", rawjson);
+        metrics.setEnabled(config.getInitParameter("io.swagger.swaggersocket.protocol.metrics", metrics.isEnabled()));
+        if ((paralleldispatch || virtualthreads) && executor == null) {
+            int threads = Runtime.getRuntime().availableProcessors() * 2;
+            String t = config.getInitParameter("io.swagger.swaggersocket.protocol.dispatchthreads");
+            if (t != null) {
+                threads = Integer.parseInt(t.trim());
+            }
+            final ExecutorService e = createDispatchExecutor(threads);
+            executor = e;
+            config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+                @Override
+                public void shutdown() {
+                    // the connections close with the framework, the interrupted requests don't answer
+                    stopping = true;
+                    e.shutdownNow();
+                }
+            });
+        }
+        String w = config.getInitParameter("io.swagger.swaggersocket.protocol.coalescewindow");
+        if (w != null) {
+            coalescewindow = Integer.parseInt(w.trim());
+        }
+        w = config.getInitParameter("io.swagger.swaggersocket.protocol.coalescemaxbytes");
+        if (w != null) {
+            coalescemaxbytes = Integer.parseInt(w.trim());
+        }
+        w = config.getInitParameter("io.swagger.swaggersocket.protocol.heartbeatinterval");
+        if (w != null) {
+            heartbeatinterval = Integer.parseInt(w.trim());
+        }
+        w = config.getInitParameter("io.swagger.swaggersocket.protocol.outboxsize");
+        if (w != null) {
+            outboxsize = Integer.parseInt(w.trim());
+        }
+        w = config.getInitParameter("io.swagger.swaggersocket.protocol.maxchunksize");
+        if (w != null) {
+            maxchunksize = Integer.parseInt(w.trim());
+        }
+        w = config.getInitParameter("io.swagger.swaggersocket.protocol.chunkqueuesize");
+        if (w != null) {
+            chunkqueuesize = Integer.parseInt(w.trim());
+        }
+        w = config.getInitParameter("io.swagger.swaggersocket.protocol.chunkwritetimeout");
+        if (w != null) {
+            chunkwritetimeout = Long.parseLong(w.trim());
+        }
+        w = config.getInitParameter("io.swagger.swaggersocket.protocol.maxinflight");
+        if (w != null) {
+            maxinflight = Integer.parseInt(w.trim());
+        }
+        w = config.getInitParameter("io.swagger.swaggersocket.protocol.bufferpoolsize");
+        if (w != null) {
+            bufferpoolsize = Long.parseLong(w.trim());
+            bufferPool = null;
+        }
+        config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+            @Override
+            public void shutdown() {
+                synchronized (SwaggerSocketProtocolInterceptor.this) {
+                    if (coalesceTimer != null) {
+                        coalesceTimer.shutdownNow();
+                        coalesceTimer = null;
+                    }
+                    if (heartbeats != null) {
+                        heartbeats.stop();
+                        heartbeats = null;
+                    }
+                }
+            }
+        });
 
         String p = config.getInitParameter("io.swagger.swaggersocket.protocol.includedheaders");
         if (p != null) {
@@ -114,6 +222,7 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         if (p != null) {
             excludedheaders = Pattern.compile(p, Pattern.CASE_INSENSITIVE);
         }
+        headerPolicy = new HeaderPolicy(includedheaders, excludedheaders);
     }
 
     public SwaggerSocketProtocolInterceptor lazywrite(boolean lazywrite) {
@@ -134,26 +243,260 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         this.emptyentity = emptyentity;
     }
 
+    /**
+     * Dispatch the requests on a pool of dispatchthreads platform threads instead of the container thread reading
+     * the message. See {@link #executor(ExecutorService)}.
+     */
+    public SwaggerSocketProtocolInterceptor paralleldispatch(boolean paralleldispatch) {
+        this.paralleldispatch = paralleldispatch;
+        return this;
+    }
+
+    public void setParalleldispatch(boolean paralleldispatch) {
+        this.paralleldispatch = paralleldispatch;
+    }
+
+    /**
+     * Dispatch the requests on virtual threads when the runtime supports them (JDK 21+), otherwise on the bounded
+     * platform pool sized by dispatchthreads. Implies paralleldispatch.
+     */
+    public SwaggerSocketProtocolInterceptor virtualthreads(boolean virtualthreads) {
+        this.virtualthreads = virtualthreads;
+        return this;
+    }
+
+    public void setVirtualthreads(boolean virtualthreads) {
+        this.virtualthreads = virtualthreads;
+    }
+
+    /**
+     * Set the {@link ExecutorService} the requests are dispatched on. The requests of a WebSocket are handed to it
+     * without waiting for them and may complete in any order, the requests of a message sent with another transport
+     * run concurrently and are waited for. The caller remains responsible for shutting it down.
+     */
+    public SwaggerSocketProtocolInterceptor executor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Accept the Smile and CBOR data formats requested in a WebSocket handshake. Enabled by default.
+     */
+    public SwaggerSocketProtocolInterceptor binaryformats(boolean binaryformats) {
+        this.binaryformats = binaryformats;
+        return this;
+    }
+
+    public void setBinaryformats(boolean binaryformats) {
+        this.binaryformats = binaryformats;
+    }
+
+    /**
+     * Embed JSON response bodies as JSON values of the frame instead of escaped strings. Disabled by default as
+     * clients then receive the body as an object rather than as text. The handshake tells the clients, which may then
+     * embed their JSON request bodies too.
+     */
+    public SwaggerSocketProtocolInterceptor rawjson(boolean rawjson) {
+        this.rawjson = rawjson;
+        return this;
+    }
+
+    public void setRawjson(boolean rawjson) {
+        this.rawjson = rawjson;
+    }
+
+    /**
+     * Seconds between two heartbeats of an idle connection, 60 by default. A connection with traffic within the
+     * interval skips its beat. 0 disables heartbeats.
+     */
+    public SwaggerSocketProtocolInterceptor heartbeatinterval(int heartbeatinterval) {
+        this.heartbeatinterval = heartbeatinterval;
+        return this;
+    }
+
+    public void setHeartbeatinterval(int heartbeatinterval) {
+        this.heartbeatinterval = heartbeatinterval;
+    }
+
+    /**
+     * The number of responses kept for a long-polling connection while none of its requests is suspended,
+     * 1024 by default.
+     */
+    public SwaggerSocketProtocolInterceptor outboxsize(int outboxsize) {
+        this.outboxsize = outboxsize;
+        return this;
+    }
+
+    public void setOutboxsize(int outboxsize) {
+        this.outboxsize = outboxsize;
+    }
+
+    /**
+     * The largest body in bytes of a WebSocket response frame. Larger writes are split into frames with the same
+     * uuid and last=false, and every response then ends with a last=true frame. 0, the default, doesn't split.
+     */
+    public SwaggerSocketProtocolInterceptor maxchunksize(int maxchunksize) {
+        this.maxchunksize = maxchunksize;
+        return this;
+    }
+
+    public void setMaxchunksize(int maxchunksize) {
+        this.maxchunksize = maxchunksize;
+    }
+
+    /**
+     * The number of chunks of one WebSocket connection written or waiting for its writer at once, 16 by default.
+     * 0 doesn't bound them.
+     */
+    public SwaggerSocketProtocolInterceptor chunkqueuesize(int chunkqueuesize) {
+        this.chunkqueuesize = chunkqueuesize;
+        return this;
+    }
+
+    public void setChunkqueuesize(int chunkqueuesize) {
+        this.chunkqueuesize = chunkqueuesize;
+    }
+
+    /**
+     * Milliseconds a chunk waits for a place in the queue of its connection, 30 seconds by default. The response
+     * then fails with a 500 instead of holding its thread on a client that doesn't read.
+     */
+    public SwaggerSocketProtocolInterceptor chunkwritetimeout(long chunkwritetimeout) {
+        this.chunkwritetimeout = chunkwritetimeout;
+        return this;
+    }
+
+    public void setChunkwritetimeout(long chunkwritetimeout) {
+        this.chunkwritetimeout = chunkwritetimeout;
+    }
+
+    /**
+     * The number of requests a client may have in flight, granted as credits in the handshake answer. Requests
+     * above it are answered with a 429 {@link StatusMessage}. 0, the default, doesn't limit them.
+     */
+    public SwaggerSocketProtocolInterceptor maxinflight(int maxinflight) {
+        this.maxinflight = maxinflight;
+        return this;
+    }
+
+    public void setMaxinflight(int maxinflight) {
+        this.maxinflight = maxinflight;
+    }
+
+    /**
+     * The number of bytes the pool of lazywrite buffers keeps for reuse, 16 MB by default. 0 disables pooling.
+     */
+    public SwaggerSocketProtocolInterceptor bufferpoolsize(long bufferpoolsize) {
+        this.bufferpoolsize = bufferpoolsize;
+        bufferPool = null;
+        return this;
+    }
+
+    public void setBufferpoolsize(long bufferpoolsize) {
+        bufferpoolsize(bufferpoolsize);
+    }
+
+    /**
+     * @return the pool of the buffers holding the deferred lazywrite writes and the frames larger than 8 KB
+     */
+    public BufferPool getBufferPool() {
+        BufferPool pool = bufferPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = bufferPool;
+                if (pool == null) {
+                    pool = new BufferPool(bufferpoolsize);
+                    bufferPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Record the latencies, statuses and sizes of the dispatched requests. Enabled by default.
+     */
+    public SwaggerSocketProtocolInterceptor metrics(boolean metrics) {
+        this.metrics.setEnabled(metrics);
+        return this;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics.setEnabled(metrics);
+    }
+
+    /**
+     * @return the metrics of the requests handled by this interceptor
+     */
+    public SwaggerSocketMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the hooks tracing the requests, by default the {@link SwaggerSocketEvents} found on the class path.
+     */
+    public SwaggerSocketProtocolInterceptor events(SwaggerSocketEvents events) {
+        this.events = events == null ? SwaggerSocketEvents.NONE : events;
+        return this;
+    }
+
+    public void setEvents(SwaggerSocketEvents events) {
+        events(events);
+    }
+
+    /**
+     * Gather the WebSocket responses of a connection completed within this many milliseconds and write them as
+     * one {@link ResponseMessage}. 0, the default, writes every response as soon as it is ready.
+     */
+    public SwaggerSocketProtocolInterceptor coalescewindow(int coalescewindow) {
+        this.coalescewindow = coalescewindow;
+        return this;
+    }
+
+    public void setCoalescewindow(int coalescewindow) {
+        this.coalescewindow = coalescewindow;
+    }
+
+    /**
+     * Write the gathered responses before the window expires once their bodies reach this many bytes.
+     */
+    public SwaggerSocketProtocolInterceptor coalescemaxbytes(int coalescemaxbytes) {
+        this.coalescemaxbytes = coalescemaxbytes;
+        return this;
+    }
+
+    public void setCoalescemaxbytes(int coalescemaxbytes) {
+        this.coalescemaxbytes = coalescemaxbytes;
+    }
+
     public SwaggerSocketProtocolInterceptor includedheaders(String p) {
         if (p != null) {
             this.includedheaders = Pattern.compile(p, Pattern.CASE_INSENSITIVE);
+            headerPolicy = new HeaderPolicy(includedheaders, excludedheaders);
         }
         return this;
     }
 
     public void setIncludedheaders(Pattern includedheaders) {
         this.includedheaders = includedheaders;
+        headerPolicy = new HeaderPolicy(includedheaders, excludedheaders);
     }
 
     public SwaggerSocketProtocolInterceptor excludedheaders(String p) {
         if (p != null) {
             this.excludedheaders = Pattern.compile(p, Pattern.CASE_INSENSITIVE);
+            headerPolicy = new HeaderPolicy(includedheaders, excludedheaders);
         }
         return this;
     }
 
     public void setExcludedheaders(Pattern excludedheaders) {
         this.excludedheaders = excludedheaders;
+        headerPolicy = new HeaderPolicy(includedheaders, excludedheaders);
     }
 
     @Override
@@ -185,129 +528,195 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
 
         if (ok && request.attributes().get(SWAGGER_SOCKET_DISPATCHED) == null) {
 
-            AtmosphereResponse response = new WrappedAtmosphereResponse(r.getResponse(), request);
+            final AtmosphereResponse response = new WrappedAtmosphereResponse(r.getResponse(), request);
 
             logger.debug("Method {} Transport {}", request.getMethod(), r.transport());
             // Suspend to keep the connection OPEN.
             if (request.getMethod() == "GET" && r.transport().equals(AtmosphereResource.TRANSPORT.LONG_POLLING)) {
-                r.resumeOnBroadcast(true).suspend();
+                SwaggerSocketConnection connection = connection(request);
+                if (connection == null) {
+                    // polling before the handshake, it will adopt this connection
+                    connection = new SwaggerSocketConnection(outboxsize, metrics);
+                    attach(request, connection);
+                }
 
-                BlockingQueue<AtmosphereResource> queue = (BlockingQueue<AtmosphereResource>)
-                        getContextValue(request, SUSPENDED_RESPONSE);
-                if (queue == null) {
-                    queue = new LinkedBlockingQueue<AtmosphereResource>();
-                    request.getSession().setAttribute(SUSPENDED_RESPONSE, queue);
+                LongPollingMailbox mailbox = connection.getMailbox();
+                byte[] pending = mailbox.drain();
+                if (pending != null) {
+                    // answer right away with the responses written since the last poll
+                    try {
+                        OutputStream o = r.getResponse().getResponse().getOutputStream();
+                        o.write(pending);
+                        o.flush();
+                    } catch (IOException e) {
+                        logger.warn("", e);
+                    }
+                    return Action.CANCELLED;
                 }
-                queue.offer(r);
 
-                String identity = (String) getContextValue(request, IDENTITY);
-                schedule(r, identity);
+                r.resumeOnBroadcast(true).suspend();
+                pending = mailbox.park(r);
+                if (pending != null) {
+                    LongPollingMailbox.deliver(r, pending);
+                } else {
+                    schedule(r, connection.getIdentity());
+                }
 
                 return Action.SUSPEND;
             }
 
-            AtmosphereFramework framework = r.getAtmosphereConfig().framework();
-            StringBuilder d = new StringBuilder();
+            final AtmosphereFramework framework = r.getAtmosphereConfig().framework();
             try {
-                InputStreamReader isr = new InputStreamReader(request.getInputStream());
-                BufferedReader bufReader = new BufferedReader(isr);
-                char[] charBuffer = new char[8192];
-
-                for (int readCount = bufReader.read(charBuffer); readCount > -1; readCount = bufReader.read(charBuffer)) {
-                    d.append(charBuffer, 0, readCount);
-                }
+                long parseStart = metrics.isEnabled() ? System.nanoTime() : 0;
+                Object parseEvent = events.parseBegin();
+                Object data = readerFor(request).read(request.getInputStream());
 
-                String data = d.toString();
-
-                if (data.length() == 0) {
+                if (data == null) {
                     return Action.CANCELLED;
                 }
-
-                String message = data.substring(0, 20).replaceAll(" ", "");
-                logger.debug(data);
-                if (message.startsWith("{\"handshake\"")) {
-                    // This will fail if the message is not well formed.
-                    HandshakeMessage handshakeMessage = mapper.readValue(data, HandshakeMessage.class);
-
-                    // If we missed the CloseReason for whatever reason (IE is a good candidate), make sure we swap the previous session anyway.
-                    String identity = (String) getContextValue(request, IDENTITY);
+                if (parseStart != 0) {
+                    metrics.transport(r.transport().name()).message(System.nanoTime() - parseStart);
+                }
+                if (parseEvent != null) {
+                    List<Request> requests = data instanceof Message ? ((Message) data).getRequests() : null;
+                    events.parse(parseEvent, r.transport().name(), data.getClass().getSimpleName(),
+                            requests == null ? 0 : requests.size());
+                }
+                touch(request);
+
+                logger.debug("Received {}", data.getClass().getSimpleName());
+                if (data instanceof HandshakeMessage) {
+                    Object handshakeEvent = events.handshakeBegin();
+                    // If we missed the CloseReason for whatever reason (IE is a good candidate), make sure we swap the previous connection anyway.
+                    SwaggerSocketConnection connection = connection(request);
+                    String identity = connection == null ? null : connection.getIdentity();
                     if (identity == null) {
                         identity = UUID.randomUUID().toString();
+                        if (connection == null) {
+                            connection = new SwaggerSocketConnection(outboxsize, metrics);
+                        }
                     } else {
-                        logger.debug("Client disconnected {}, cleaning session {}", identity);
-                        try {
-                            Enumeration<String> e = request.getSession().getAttributeNames();
-                            while (e.hasMoreElements()) {
-                                request.getSession().removeAttribute(e.nextElement());
-                            }
-                        } catch (Exception ex) {
-                            logger.warn("", ex);
+                        logger.debug("Client disconnected {}, cleaning connection", identity);
+                        ResponseCoalescer previous = connection.getCoalescer();
+                        if (previous != null) {
+                            previous.flush();
+                        }
+                        if (connection.close()) {
+                            events.close(identity, "handshake");
                         }
+                        connection = new SwaggerSocketConnection(outboxsize, metrics);
                     }
-                    addContextValue(request, IDENTITY, identity);
+                    connection.setIdentity(identity);
+                    connection.setCredits(maxinflight);
+                    connection.setChunkQueue(chunkqueuesize);
 
+                    String dataFormat = negotiateDataFormat(r, ((HandshakeMessage) data).getHandshake());
                     StatusMessage statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(200, "OK"))
-                            .identity(identity).build();
+                            .identity(identity).dataFormat(dataFormat)
+                            .credits(maxinflight > 0 ? Integer.valueOf(maxinflight) : null)
+                            .chunkSize(maxchunksize > 0 && r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET
+                                    ? Integer.valueOf(maxchunksize) : null)
+                            .rawJson(rawjson ? Boolean.TRUE : null).build();
                     response.setContentType("application/json");
+                    // The handshake answer is always JSON text, the frames following it use the negotiated format.
                     response.getOutputStream().write(mapper.writeValueAsBytes(statusMessage));
 
+                    connection.setDataFormat(dataFormat);
+                    if (dataFormat != null) {
+                        request.setAttribute(TrackMessageSizeInterceptor.SKIP_INTERCEPTOR, "true");
+                    }
+                    // each message of a WebSocket comes with a new AtmosphereResource, switch the WebSocket itself
+                    AsyncIOWriter writer = r.getResponse().getAsyncIOWriter();
+                    if (writer instanceof WebSocket) {
+                        WebSocket.class.cast(writer).binaryWrite(dataFormat != null);
+                    }
+                    attach(request, connection);
+
                     if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                        final SwaggerSocketConnection opened = connection;
+                        r.addEventListener(new AtmosphereResourceEventListenerAdapter() {
+                            @Override
+                            public void onDisconnect(AtmosphereResourceEvent event) {
+                                // closed without a CloseMessage
+                                if (opened.close()) {
+                                    events.close(opened.getIdentity(), "disconnect");
+                                }
+                            }
+                        });
                         schedule(r, identity);
+                        if (coalescewindow > 0) {
+                            connection.setCoalescer(createCoalescer(identity, response));
+                        }
                     }
-                } else if (message.startsWith("{\"close\"")) {
-                    CloseMessage c = mapper.readValue(data, CloseMessage.class);
+                    if (handshakeEvent != null) {
+                        events.handshake(handshakeEvent, identity, r.transport().name(), dataFormat);
+                    }
+                } else if (data instanceof CloseMessage) {
+                    CloseMessage c = (CloseMessage) data;
 
                     logger.debug("Client disconnected {} with reason {}", c.getClose().getIdentity(), c.getClose().getReason());
+                    SwaggerSocketConnection connection = connection(request);
+                    if (connection != null) {
+                        if (connection.close()) {
+                            events.close(connection.getIdentity(), c.getClose().getReason());
+                        }
+                        detach(request);
+                    }
                     try {
                         request.getSession().invalidate();
                     } catch (Exception ex) {
                         logger.warn("", ex);
                     }
                     return Action.CANCELLED;
+                } else if (data instanceof CancelMessage) {
+                    Cancel cancel = ((CancelMessage) data).getCancel();
+                    SwaggerSocketConnection connection = connection(request);
+                    if (connection != null && cancel != null && cancel.getUuids() != null
+                            && cancel.getIdentity() != null && cancel.getIdentity().equals(connection.getIdentity())) {
+                        for (String uuid : cancel.getUuids()) {
+                            if (connection.cancel(uuid)) {
+                                logger.debug("Cancelled request {} of {}", uuid, cancel.getIdentity());
+                            }
+                        }
+                    }
+                    return Action.CANCELLED;
                 } else {
-                    Message swaggerSocketMessage = mapper.readValue(data, Message.class);
+                    Message swaggerSocketMessage = (Message) data;
                     swaggerSocketMessage.transactionID(UUID.randomUUID().toString());
 
-                    String identity = (String) getContextValue(request, IDENTITY);
+                    SwaggerSocketConnection connection = connection(request);
+                    final String identity = connection == null ? null : connection.getIdentity();
 
-                    if (!swaggerSocketMessage.getIdentity().equals(identity)) {
+                    if (swaggerSocketMessage.getIdentity() == null || !swaggerSocketMessage.getIdentity().equals(identity)) {
                         StatusMessage statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(503, "Not Allowed"))
                                 .identity(swaggerSocketMessage.getIdentity()).build();
-                        response.getOutputStream().write(mapper.writeValueAsBytes(statusMessage));
+                        response.getOutputStream().write(mapperFor(request).writeValueAsBytes(statusMessage));
                         return Action.CANCELLED;
                     }
 
-                    transactionIdentity.set(swaggerSocketMessage.transactionID());
-
+                    final String transactionID = swaggerSocketMessage.transactionID();
                     List<Request> requests = swaggerSocketMessage.getRequests();
-                    addContextValue(request, swaggerSocketMessage.transactionID() + RESPONSE_COUNTER, new AtomicInteger(requests.size()));
-
-                    AtmosphereRequest ar;
-                    for (Request req : requests) {
-                        ar = toAtmosphereRequest(request, req);
-                        try {
-                            ar.attributes().put(SWAGGER_SOCKET_DISPATCHED, "true");
-
-                            // This is a new request, we must clean the Websocket AtmosphereResource.
-                            request.removeAttribute(INJECTED_ATMOSPHERE_RESOURCE);
-                            response.request(ar);
-                            attachWriter(r);
-                            ssRequest.set(req);
-                            request.setAttribute("swaggerSocketRequest", req);
-
-                            Action action = framework.doCometSupport(ar, response);
-                            if (action.type() == Action.TYPE.SUSPEND) {
-                                ar.destroyable(false);
-                                response.destroyable(false);
+                    if (r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                        // the other transports send all the responses of a transaction at once, take or reject it whole
+                        if (!connection.acquireCredits(requests.size())) {
+                            response.getOutputStream().write(mapperFor(request).writeValueAsBytes(tooManyRequests(identity)));
+                            return Action.CANCELLED;
+                        }
+                        connection.begin(transactionID, requests.size());
+                    } else if (connection.limitsCredits()) {
+                        List<Request> accepted = new ArrayList<Request>(requests.size());
+                        for (Request req : requests) {
+                            if (connection.acquireCredits(1)) {
+                                accepted.add(req);
+                            } else {
+                                writeFrame(r.getResponse(), mapperFor(request).writeValueAsBytes(tooManyRequests(req.getUuid())));
                             }
-                        } catch (Exception e) {
-                            logger.warn("", e);
-                            //REVISIT might want to optionally return the body entity?
-                            response.setStatus(500, "Server Error");
-                            ResponseMessage responseMessage = new ResponseMessage(identity, createResponseBuilder(response, null).build());
-                            response.getOutputStream().write(mapper.writeValueAsBytes(responseMessage));
                         }
+                        requests = accepted;
                     }
+
+                    attachWriter(r);
+                    dispatch(framework, r, request, response, requests, transactionID, identity);
                 }
                 return Action.CANCELLED;
             } catch (IOException e) {
@@ -323,19 +732,204 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         return Action.CONTINUE;
     }
 
+    private static StatusMessage tooManyRequests(String identity) {
+        return new StatusMessage.Builder().status(new StatusMessage.Status(429, "Too Many Requests"))
+                .identity(identity).build();
+    }
+
+    private static StatusMessage unavailable(String identity) {
+        return new StatusMessage.Builder().status(new StatusMessage.Status(503, "Service Unavailable"))
+                .identity(identity).build();
+    }
+
+    /**
+     * Dispatch the requests of a message. Without a dispatch executor they run one after the other on this thread.
+     * With one, the requests of a WebSocket are handed to it and this returns at once, so the container thread goes
+     * back to reading frames while they run and their responses are written as they complete. The other transports
+     * answer a message within its HTTP request, their requests run concurrently and are waited for.
+     */
+    private void dispatch(final AtmosphereFramework framework, final AtmosphereResource r, final AtmosphereRequest request,
+                          final AtmosphereResponse res, List<Request> requests, final String transactionID,
+                          final String identity) {
+        // on this thread, the dispatched requests only read the connection's request
+        cacheRequestURL(request);
+        ExecutorService e = executor;
+        if (e == null) {
+            for (Request req : requests) {
+                dispatch(framework, r, request, res, req, null, transactionID, identity);
+            }
+        } else if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
+            SwaggerSocketConnection connection = connection(request);
+            for (final Request req : requests) {
+                // registered right away, a cancel read before the request starts keeps it from running
+                final SwaggerSocketConnection.InFlight queued =
+                        connection == null ? null : connection.queue(req.getUuid());
+                try {
+                    e.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            dispatch(framework, r, request, res, req, queued, transactionID, identity);
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    logger.warn("Unable to dispatch request {}", req.getUuid(), ex);
+                    if (connection != null) {
+                        queued.done();
+                        connection.releaseCredit();
+                    }
+                    try {
+                        writeFrame(r.getResponse(), mapperFor(request).writeValueAsBytes(unavailable(req.getUuid())));
+                    } catch (IOException io) {
+                        logger.warn("", io);
+                    }
+                }
+            }
+        } else {
+            // Run the first request on this thread and the others on the executor, then wait for all of them so
+            // the batch takes as long as its slowest request.
+            List<Future<?>> futures = new ArrayList<Future<?>>(requests.size() - 1);
+            for (final Request req : requests.subList(1, requests.size())) {
+                futures.add(e.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch(framework, r, request, res, req, null, transactionID, identity);
+                    }
+                }));
+            }
+            if (!requests.isEmpty()) {
+                dispatch(framework, r, request, res, requests.get(0), null, transactionID, identity);
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException ex) {
+                    logger.warn("", ex.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatch a single SwaggerSocket {@link Request} to the framework. The swagger request and its transaction
+     * are stored on the dispatched {@link AtmosphereRequest} so the response side finds them from any thread.
+     *
+     * @param queued the registration of a request handed to the executor, null to register it now
+     */
+    private void dispatch(AtmosphereFramework framework, AtmosphereResource r, AtmosphereRequest request,
+                          AtmosphereResponse res, Request req, SwaggerSocketConnection.InFlight queued,
+                          String transactionID, String identity) {
+        AtmosphereRequest ar = toAtmosphereRequest(request, req);
+        final WrappedAtmosphereResponse response = new WrappedAtmosphereResponse(res, ar);
+        SwaggerSocketConnection connection = connection(request);
+        SwaggerSocketConnection.InFlight inFlight = null;
+        if (connection != null) {
+            Runnable onCancel = null;
+            if (connection.limitsCredits()) {
+                response.holdCredit(connection);
+                onCancel = new Runnable() {
+                    @Override
+                    public void run() {
+                        response.returnCredit();
+                    }
+                };
+            }
+            if (queued == null) {
+                inFlight = connection.dispatching(req.getUuid(), ar, onCancel);
+            } else if (queued.start(ar, onCancel)) {
+                inFlight = queued;
+            } else {
+                logger.debug("Cancelled request {} not dispatched", req.getUuid());
+                response.returnCredit();
+                return;
+            }
+            response.inFlight = inFlight;
+        }
+        SwaggerSocketMetrics.PathStats pathStats = null;
+        SwaggerSocketMetrics.TransportStats transportStats = null;
+        long start = 0;
+        Object dispatchEvent = null;
+        boolean suspended = false;
+        try {
+            ar.attributes().put(SWAGGER_SOCKET_DISPATCHED, "true");
+            ar.attributes().put(SWAGGER_SOCKET_REQUEST, req);
+            ar.attributes().put(TRANSACTION_IDENTITY, transactionID);
+            if (metrics.isEnabled()) {
+                pathStats = metrics.path(req.getMethod(), req.getPath());
+                transportStats = metrics.transport(r.transport().name());
+                ar.attributes().put(PATH_METRICS, pathStats);
+                ar.attributes().put(TRANSPORT_METRICS, transportStats);
+                start = System.nanoTime();
+            }
+            dispatchEvent = events.dispatchBegin();
+
+            // kept until the response is closed, its last frame still needs the swagger request
+            ar.destroyable(false);
+            response.destroyable(false);
+            Action action = framework.doCometSupport(ar, response);
+            if (action.type() == Action.TYPE.SUSPEND) {
+                suspended = true;
+            } else {
+                response.end();
+            }
+        } catch (Exception e) {
+            if (response.isDropped()) {
+                logger.debug("Cancelled request {} failed", req.getUuid(), e);
+                return;
+            }
+            if (stopping) {
+                logger.debug("Request {} interrupted by the shutdown", req.getUuid(), e);
+                return;
+            }
+            logger.warn("", e);
+            //REVISIT might want to optionally return the body entity?
+            response.setStatus(500, "Server Error");
+            try {
+                // the error ends the response, a client gathering its chunks must not wait for more
+                response.last = true;
+                ResponseMessage responseMessage = new ResponseMessage(identity, createResponseBuilder(response, null).build());
+                ServletOutputStream out = response.getOutputStream();
+                out.write(mapperFor(request).writeValueAsBytes(responseMessage));
+                out.close();
+            } catch (IOException ex) {
+                logger.warn("", ex);
+            }
+        } finally {
+            if (pathStats != null) {
+                long nanos = System.nanoTime() - start;
+                pathStats.request(response.getStatus(), bodyLength(req), nanos);
+                transportStats.request(nanos);
+            }
+            if (dispatchEvent != null) {
+                events.dispatch(dispatchEvent, identity, req.getUuid(), req.getMethod(), req.getPath(),
+                        response.getStatus(), bodyLength(req));
+            }
+            if (inFlight != null) {
+                inFlight.returned(suspended);
+            }
+            if (!suspended) {
+                ar.destroy(true);
+                response.destroy(true);
+            }
+        }
+    }
+
+    /**
+     * @return the bytes the body of a request took in its frame, as measured when the frame was read
+     */
+    private static long bodyLength(Request req) {
+        long length = SwaggerSocketMessageReader.bodyLength(req);
+        return length < 0 ? 0 : length;
+    }
+
     private final void attachWriter(final AtmosphereResource r) {
         final AtmosphereRequest request = r.getRequest();
 
         AtmosphereResponse res = r.getResponse();
         AsyncIOWriter writer = res.getAsyncIOWriter();
 
-        BlockingQueue<AtmosphereResource> queue = (BlockingQueue<AtmosphereResource>)
-                getContextValue(request, SUSPENDED_RESPONSE);
-        if (queue == null) {
-            queue = new LinkedBlockingQueue<AtmosphereResource>();
-            request.getSession().setAttribute(SUSPENDED_RESPONSE, queue);
-        }
-
         if (AtmosphereInterceptorWriter.class.isAssignableFrom(writer.getClass())) {
             // WebSocket already had one.
             if (r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
@@ -347,37 +941,13 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                         // We are buffering response.
                         if (data == null) return;
 
-                        BlockingQueue<AtmosphereResource> queue =
-                                (BlockingQueue<AtmosphereResource>) getContextValue(request, SUSPENDED_RESPONSE);
-                        if (queue != null) {
-                            AtmosphereResource resource;
-                            try {
-                                // TODO: Should this be configurable
-                                // We stay suspended for 60 seconds
-                                resource = queue.poll(60, TimeUnit.SECONDS);
-                            } catch (InterruptedException e) {
-                                logger.trace("", e);
-                                return;
-                            }
-
-                            if (resource == null) {
-                                logger.debug("No resource was suspended, resuming the second connection.");
-                            } else {
-
-                                logger.trace("Resuming {}", resource.uuid());
-
-                                try {
-                                    OutputStream o = resource.getResponse().getResponse().getOutputStream();
-                                    o.write(data);
-                                    o.flush();
-
-                                    resource.resume();
-                                } catch (IOException ex) {
-                                    logger.warn("", ex);
-                                }
+                        SwaggerSocketConnection connection = connection(request);
+                        if (connection != null) {
+                            if (!connection.getMailbox().offer(data)) {
+                                overflow(request, connection, data);
                             }
                         } else {
-                            logger.error("Queue was null");
+                            logger.error("No connection for {}", r.uuid());
                         }
                     }
 
@@ -405,25 +975,207 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         }
     }
 
-    protected void schedule(AtmosphereResource r, String uuid) {
-        heartbeat.addAtmosphereResource(r).scheduleFixedBroadcast("heartbeat-" + uuid, 60, 60, TimeUnit.SECONDS);
+    /**
+     * The outbox of a long-polling connection is full. Answer the requests of the frame that didn't fit with a 503
+     * {@link StatusMessage} each, or close the connection when even those don't fit: its client stopped polling.
+     */
+    private void overflow(AtmosphereRequest request, SwaggerSocketConnection connection, byte[] frame) {
+        metrics.outboxOverflow();
+        LongPollingMailbox mailbox = connection.getMailbox();
+        logger.warn("Long-polling outbox of {} full, rejecting a response", connection.getIdentity());
+        try {
+            // the frame may start with the length added by the TrackMessageSizeInterceptor
+            int start = 0;
+            while (start < frame.length && frame[start] != '{') {
+                start++;
+            }
+            ResponseMessage dropped = mapper.readValue(frame, start, frame.length - start, ResponseMessage.class);
+            if (dropped.getResponses() == null) {
+                return;
+            }
+            for (Response r : dropped.getResponses()) {
+                StatusMessage statusMessage = new StatusMessage.Builder()
+                        .status(new StatusMessage.Status(503, "Outbox Full")).identity(r.getUuid()).build();
+                if (!mailbox.offerRejection(mapper.writeValueAsBytes(statusMessage))) {
+                    logger.warn("Closing long-polling connection {}, its client doesn't poll", connection.getIdentity());
+                    mailbox.clear();
+                    if (connection.close()) {
+                        events.close(connection.getIdentity(), "outbox overflow");
+                    }
+                    detach(request);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // a heartbeat, nothing waits for it
+            logger.debug("Dropped frame of {} is not a response", connection.getIdentity(), e);
+        }
+    }
+
+    protected ExecutorService createDispatchExecutor(int threads) {
+        return DispatchExecutors.newDispatchExecutor(virtualthreads, threads);
+    }
+
+    /**
+     * @return the binary format requested by the handshake if this connection can use it, null to stay on JSON
+     */
+    private String negotiateDataFormat(AtmosphereResource r, Handshake handshake) {
+        if (!binaryformats || handshake == null || r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
+            return null;
+        }
+        String format = handshake.getDataFormat();
+        if (!DataFormat.isBinary(format)) {
+            return null;
+        }
+        return DataFormat.SMILE.equalsIgnoreCase(format) ? DataFormat.SMILE : DataFormat.CBOR;
+    }
+
+    private SwaggerSocketMessageReader readerFor(AtmosphereRequest request) {
+        SwaggerSocketConnection connection = connection(request);
+        String format = connection == null ? null : connection.getDataFormat();
+        return format == null ? reader : binaryReaders.get(format);
+    }
+
+    private ObjectMapper mapperFor(AtmosphereRequest request) {
+        SwaggerSocketConnection connection = connection(request);
+        String format = connection == null ? null : connection.getDataFormat();
+        return format == null ? mapper : binaryMappers.get(format);
+    }
+
+    private ResponseCoalescer createCoalescer(String identity, final AtmosphereResponse connection) throws IOException {
+        final ObjectMapper frameMapper = mapperFor(connection.request());
+        ScheduledExecutorService timer;
+        synchronized (this) {
+            if (coalesceTimer == null) {
+                coalesceTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread t = new Thread(runnable, "SwaggerSocket-Coalescer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            timer = coalesceTimer;
+        }
+        return new ResponseCoalescer(identity, frameMapper, timer, coalescewindow, coalescemaxbytes,
+                new ResponseCoalescer.Sink() {
+                    @Override
+                    public void write(byte[] frame) throws IOException {
+                        writeFrame(connection, frame);
+                    }
+                });
+    }
+
+    /**
+     * Write an already serialized frame through the writer of a connection, bypassing the response wrapping.
+     */
+    private void writeFrame(AtmosphereResponse connection, byte[] frame) throws IOException {
+        AtmosphereResponse response = new FrameAtmosphereResponse(connection);
+        synchronized (connection.getAsyncIOWriter() != null ? connection.getAsyncIOWriter() : connection) {
+            response.getOutputStream().write(frame);
+        }
+    }
+
+    private synchronized HeartbeatScheduler heartbeats() {
+        if (heartbeats == null) {
+            heartbeats = new HeartbeatScheduler(TimeUnit.SECONDS.toMillis(heartbeatinterval), 1000, 512);
+        }
+        return heartbeats;
+    }
+
+    private void touch(AtmosphereRequest request) {
+        SwaggerSocketConnection connection = connection(request);
+        HeartbeatScheduler.Handle h = connection == null ? null : connection.getHeartbeat();
+        if (h != null) {
+            h.touch();
+        }
+    }
+
+    /**
+     * Schedule the heartbeats of a connection. The {@link Heartbeat} frame is serialized once and written only to
+     * this connection: as long as it is open for a WebSocket, once to resume a suspended long-polling request.
+     */
+    protected void schedule(final AtmosphereResource r, final String uuid) {
+        if (heartbeatinterval <= 0) {
+            return;
+        }
+        final AtmosphereRequest request = r.getRequest();
+        final SwaggerSocketConnection connection = connection(request);
+        if (connection == null) {
+            return;
+        }
+        final byte[] frame;
+        try {
+            frame = mapperFor(request).writeValueAsBytes(new Heartbeat(String.valueOf(System.nanoTime()), uuid));
+        } catch (IOException e) {
+            logger.warn("", e);
+            return;
+        }
+
+        HeartbeatScheduler.Target target;
+        if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
+            target = new HeartbeatScheduler.Target() {
+                @Override
+                public boolean beat() {
+                    if (r.isCancelled()) {
+                        return false;
+                    }
+                    try {
+                        writeFrame(r.getResponse(), frame);
+                        metrics.heartbeat();
+                        events.heartbeat(uuid, r.transport().name(), frame.length);
+                        return true;
+                    } catch (IOException e) {
+                        logger.debug("Unable to write heartbeat to {}", r.uuid(), e);
+                        return false;
+                    }
+                }
+            };
+        } else {
+            target = new HeartbeatScheduler.Target() {
+                @Override
+                public boolean beat() {
+                    // a response may already have taken the suspended request
+                    if (r.isResumed() || r.isCancelled() || !connection.getMailbox().claim(r)) {
+                        return false;
+                    }
+                    try {
+                        writeFrame(r.getResponse(), frame);
+                        metrics.heartbeat();
+                        events.heartbeat(uuid, r.transport().name(), frame.length);
+                    } catch (IOException e) {
+                        logger.debug("Unable to write heartbeat to {}", r.uuid(), e);
+                    }
+                    r.resume();
+                    return false;
+                }
+            };
+        }
+
+        HeartbeatScheduler.Handle handle = heartbeats().add(target);
+        if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
+            connection.setHeartbeat(handle);
+        }
     }
 
     protected final static AtmosphereRequest toAtmosphereRequest(AtmosphereRequest r, ProtocolBase request) {
         AtmosphereRequest.Builder b = new AtmosphereRequest.Builder();
-        Map<String, String> hdrs = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
-        if (request.getHeaders() != null) {
-            for (Header h : request.getHeaders()) {
+        List<Header> headers = request.getHeaders();
+        Map<String, String> hdrs = new HeaderMap(headers == null ? 0 : headers.size());
+        if (headers != null) {
+            for (Header h : headers) {
                hdrs.put(h.getName(), h.getValue());
             }
         }
 
+        // mutable, the request adds the parameters of the connection's URL to it
         Map<String, String[]> queryStrings = new HashMap<String, String[]>();
         if (request.getQueryString() != null) {
             for (QueryString h : request.getQueryString()) {
                 String[] s = queryStrings.get(h.getName());
                 if (s != null) {
-                    String[] s1 = new String[s.length];
+                    String[] s1 = new String[s.length + 1];
                     System.arraycopy(s, 0, s1, 0, s.length);
                     s1[s.length] = h.getValue();
                     queryStrings.put(h.getName(), s1);
@@ -433,55 +1185,66 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
             }
         }
 
-        String p = request.getPath().replaceAll("\\s+", "%20").trim();
-        String requestURL = r.getRequestURL() + p;
-        if (r.getRequestURL().toString().endsWith("/") && p.startsWith("/")) {
-            requestURL = r.getRequestURL().toString() + p.substring(1);
-        }
-
-        String requestURI = r.getRequestURI() + p;
-        if (r.getRequestURI().endsWith("/") && p.startsWith("/")) {
-            requestURI = r.getRequestURI() + p.substring(1);
-        }
-
-        if (!p.startsWith("/")) {
-            p = "/" + p;
+        // the connection's URL is the same for all its requests, built once when its messages are read
+        String baseURL = String.class.cast(r.getAttribute(REQUEST_URL));
+        if (baseURL == null) {
+            baseURL = r.getRequestURL().toString();
         }
+        PathCache.Entry path = paths.get(baseURL, r.getRequestURI(), request.getPath());
 
         // get the content-type
         String contentType = request.getDataFormat();
         if (contentType == null) {
             contentType = hdrs.get("Content-Type");
         }
-        b.pathInfo(p)
+        b.pathInfo(path.pathInfo)
                 .contentType(contentType)
                 .headers(hdrs)
                 .method(request.getMethod())
                 .queryStrings(queryStrings)
-                .requestURI(requestURI)
-                .requestURL(requestURL)
-                .request(r);
-        // add the body only if it is present
-        if (request.getMessageBody() != null) {
+                .requestURI(path.requestURI)
+                .requestURL(path.requestURL)
+                .request(new DispatchedHttpRequest(r));
+        // add the body only if it is present, a JSON value as its text
+        if (request.getRawMessageBody() != null) {
+            b.body(request.getRawMessageBody().toString());
+        } else if (request.getMessageBody() != null) {
             b.body(request.getMessageBody().toString());
         }
 
         return b.build();
     }
 
-    private final void addContextValue(AtmosphereRequest request, String name, Object value) {
+    private static void cacheRequestURL(AtmosphereRequest request) {
+        if (request.getAttribute(REQUEST_URL) == null) {
+            request.setAttribute(REQUEST_URL, request.getRequestURL().toString());
+        }
+    }
+
+    private final void attach(AtmosphereRequest request, SwaggerSocketConnection connection) {
         if (request.resource().transport().equals(AtmosphereResource.TRANSPORT.WEBSOCKET)) {
-            request.setAttribute(name, value);
+            request.setAttribute(CONNECTION, connection);
         } else {
-            request.getSession().setAttribute(name, value);
+            request.getSession().setAttribute(CONNECTION, connection);
         }
     }
 
-    private final Object getContextValue(AtmosphereRequest request, String name) {
+    private final void detach(AtmosphereRequest request) {
         if (request.resource().transport().equals(AtmosphereResource.TRANSPORT.WEBSOCKET)) {
-            return request.getAttribute(name);
+            request.removeAttribute(CONNECTION);
         } else {
-            return request.getSession().getAttribute(name);
+            request.getSession().removeAttribute(CONNECTION);
+        }
+    }
+
+    /**
+     * @return the state of the request's connection, null before the handshake
+     */
+    private final SwaggerSocketConnection connection(AtmosphereRequest request) {
+        if (request.resource().transport().equals(AtmosphereResource.TRANSPORT.WEBSOCKET)) {
+            return SwaggerSocketConnection.class.cast(request.getAttribute(CONNECTION));
+        } else {
+            return SwaggerSocketConnection.class.cast(request.getSession().getAttribute(CONNECTION));
         }
     }
 
@@ -489,12 +1252,11 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
 
         @Override
         public byte[] transformPayload(AtmosphereResponse response, byte[] responseDraft, byte[] data) throws IOException {
-            Object rm = wrapMessage(response, new String(responseDraft, response.getCharacterEncoding()));
-            if (rm != null) {
-                return mapper.writeValueAsBytes(rm);
-            } else {
-                return null;
+            if (response instanceof FrameAtmosphereResponse) {
+                // already a serialized frame
+                return responseDraft;
             }
+            return toFrame(response, responseDraft);
         }
 
         @Override
@@ -512,74 +1274,154 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                             response.getStatusMessage()))
                     .identity(swaggerSocketRequest.getUuid()).build();
             try {
-                return mapper.writeValueAsBytes(statusMessage);
+                return mapperFor(response.request()).writeValueAsBytes(statusMessage);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * Serialize the response to a write of a dispatched request, recording its metrics and wrap event.
+     *
+     * @return the frame or null if the response waits for the others of its transaction
+     */
+    private byte[] toFrame(AtmosphereResponse response, byte[] body) throws IOException {
+        AtmosphereRequest request = response.request();
+        touch(request);
+        SwaggerSocketMetrics.PathStats pathStats = metrics.isEnabled() && request != null
+                ? SwaggerSocketMetrics.PathStats.class.cast(request.getAttribute(PATH_METRICS)) : null;
+        long start = pathStats != null ? System.nanoTime() : 0;
+        Object wrapEvent = events.wrapBegin();
+        byte[] frame = writeEnvelope(response, body);
+        if (frame == null) {
+            Object rm = wrapMessage(response, new String(body, response.getCharacterEncoding()));
+            frame = rm == null ? null : mapperFor(request).writeValueAsBytes(rm);
+        }
+        if (pathStats != null && frame != null) {
+            long nanos = System.nanoTime() - start;
+            pathStats.response(frame.length, nanos);
+            SwaggerSocketMetrics.TransportStats transportStats =
+                    SwaggerSocketMetrics.TransportStats.class.cast(request.getAttribute(TRANSPORT_METRICS));
+            if (transportStats != null) {
+                transportStats.response(nanos);
+            }
+        }
+        if (wrapEvent != null && frame != null && request != null) {
+            Request req = lookupRequest(request);
+            SwaggerSocketConnection connection = connection(request);
+            events.wrap(wrapEvent, connection == null ? null : connection.getIdentity(),
+                    req == null ? null : req.getUuid(), req == null ? null : req.getPath(), frame.length);
+        }
+        return frame;
+    }
+
     protected Request lookupRequest(AtmosphereRequest request) {
-        Request swaggerSocketRequest = ssRequest.get();
-        if (swaggerSocketRequest == null) {
-            swaggerSocketRequest = (Request) request.getAttribute("swaggerSocketRequest");
+        return (Request) request.getAttribute(SWAGGER_SOCKET_REQUEST);
+    }
+
+    /**
+     * Write a single JSON response without decoding its body.
+     *
+     * @return the frame or null if the response has to go through {@link #wrapMessage(AtmosphereResponse, String)}
+     */
+    private byte[] writeEnvelope(AtmosphereResponse res, byte[] body) throws IOException {
+        AtmosphereRequest request = res.request();
+        SwaggerSocketConnection connection = connection(request);
+        if (connection == null || connection.getDataFormat() != null || lookupRequest(request) == null
+                || startsWith(body, HEARTBEAT_PREFIX)
+                || connection.getTransaction(String.class.cast(request.getAttribute(TRANSACTION_IDENTITY))) != null) {
+            return null;
         }
-        return swaggerSocketRequest;
+        String charset = res.getCharacterEncoding();
+        boolean raw = false;
+        if (body.length > 0 && isRawJson(res)) {
+            if (!ResponseEnvelopeWriter.isUTF8(charset)) {
+                return null;
+            }
+            raw = JsonBody.isValid(body, 0, body.length);
+        }
+        Response response = newResponseBuilder(res, body.length > 0).build();
+        return ResponseEnvelopeWriter.write(connection.getIdentity(), response, body, 0, body.length, charset, raw,
+                getBufferPool());
+    }
+
+    private static boolean startsWith(byte[] b, byte[] prefix) {
+        if (b.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isRawJson(AtmosphereResponse res) {
+        if (!rawjson) {
+            return false;
+        }
+        String contentType = res.getContentType();
+        // a chunk isn't a JSON value on its own
+        return contentType != null && contentType.contains("json")
+                && !(res instanceof WrappedAtmosphereResponse && WrappedAtmosphereResponse.class.cast(res).isChunked());
     }
 
     protected final Object wrapMessage(AtmosphereResponse res, String message) {
+        SwaggerSocketConnection connection = connection(res.request());
+        String identity = connection == null ? null : connection.getIdentity();
         if (message != null && message.startsWith("heartbeat-")) {
-            String identity = (String) getContextValue(res.request(), IDENTITY);
             return new Heartbeat(String.valueOf(System.nanoTime()), identity);
         } else {
             Response.Builder builder = createResponseBuilder(res, message);
-            String identity = (String) getContextValue(res.request(), IDENTITY);
 
-            AtomicInteger expectedResponseCount = (AtomicInteger) getContextValue(res.request(), transactionIdentity.get() + RESPONSE_COUNTER);
-            ResponseMessage m = null;
-            if (expectedResponseCount != null && res.resource().transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
-                m = (ResponseMessage) getContextValue(res.request(), transactionIdentity.get() + ResponseMessage.class.getName());
+            String transactionID = String.class.cast(res.request().getAttribute(TRANSACTION_IDENTITY));
+            SwaggerSocketConnection.Transaction transaction = connection == null ? null : connection.getTransaction(transactionID);
+            if (transaction != null) {
+                // Responses of one transaction may complete concurrently when dispatched in parallel.
+                ResponseMessage m = transaction.add(identity, builder.build());
                 if (m != null) {
-                    m.response(builder.build());
-                } else {
-                    m = new ResponseMessage(identity, builder.build());
-                }
-
-                if (expectedResponseCount.decrementAndGet() <= 0) {
-                    return m;
-                } else {
-                    addContextValue(res.request(), transactionIdentity.get() + ResponseMessage.class.getName(), m);
-                    return null;
+                    connection.end(transactionID);
                 }
+                return m;
             }
+            return new ResponseMessage(identity, builder.build());
+        }
+    }
 
-            if (m == null) {
-                m = new ResponseMessage(identity, builder.build());
+    private Builder createResponseBuilder(AtmosphereResponse res, String message) {
+        boolean hasBody = message != null && message.length() > 0;
+        Response.Builder builder = newResponseBuilder(res, hasBody);
+        if (hasBody) {
+            if (isRawJson(res) && JsonBody.isValid(message)) {
+                builder.body(JsonBody.of(message));
+            } else {
+                builder.body(message);
             }
-            return m;
         }
+        return builder;
     }
 
-    private Builder createResponseBuilder(AtmosphereResponse res, String message) {
+    private Builder newResponseBuilder(AtmosphereResponse res, boolean hasBody) {
         Request swaggerSocketRequest = lookupRequest(res.request());
         Response.Builder builder = new Response.Builder();
         builder.status(res.getStatus(), res.getStatusMessage());
 
         // only include some headers and not all headers from the response
-        if (message != null && message.length() > 0) {
-            builder.body(message).header(new Header("Content-Type", res.getContentType()));
+        if (hasBody) {
+            builder.header(new Header("Content-Type", res.getContentType()));
         }
 
         // transfer those headers that match included and does not match excluded
+        HeaderPolicy policy = headerPolicy;
         for (Map.Entry<String, String> hv : res.headers().entrySet()) {
-            if (!"Content-Type".equalsIgnoreCase(hv.getKey()) 
-                && includedheaders != null && includedheaders.matcher(hv.getKey()).matches()
-                && !(excludedheaders != null && excludedheaders.matcher(hv.getKey()).matches())) {
+            if (policy.accept(hv.getKey())) {
                 builder.header(new Header(hv.getKey(), hv.getValue()));
             }
         }
         builder.uuid(swaggerSocketRequest.getUuid()).path(swaggerSocketRequest.getPath());
-        if (res instanceof WrappedAtmosphereResponse && ((WrappedAtmosphereResponse)res).isLast()) {
+        if (res instanceof WrappedAtmosphereResponse && WrappedAtmosphereResponse.class.cast(res).isLast()) {
             builder.last(true);
         }
         return builder;
@@ -593,24 +1435,98 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
     private class WrappedAtmosphereResponse extends AtmosphereResponse {
         private int depth;
         private byte[] buffer;
+        private BufferPool bufferOwner;
         private int buffersize;
         private boolean last;
+        private boolean written;
+        private boolean closed;
+        // responses dispatched in parallel share the connection's writer, keep their writes serialized
+        private final Object writeLock;
+        // the connection whose credit is given back with the last frame or on close
+        private final AtomicReference<SwaggerSocketConnection> credit = new AtomicReference<SwaggerSocketConnection>();
+        // set for the dispatched requests, their writes are dropped once cancelled
+        private volatile SwaggerSocketConnection.InFlight inFlight;
 
         public WrappedAtmosphereResponse(AtmosphereResponse resp, AtmosphereRequest req) {
             super((HttpServletResponse)resp.getResponse(), resp.getAsyncIOWriter(), req, resp.isDestroyable());
+            writeLock = resp.getAsyncIOWriter() != null ? resp.getAsyncIOWriter() : this;
         }
 
         public boolean isLast() {
             return last;
         }
 
+        /**
+         * @return true if the request was cancelled and its response is not expected. A transaction still waits
+         * for the responses of its cancelled requests.
+         */
+        boolean isDropped() {
+            SwaggerSocketConnection.InFlight f = inFlight;
+            if (f == null || !f.isCancelled()) {
+                return false;
+            }
+            AtmosphereRequest req = request();
+            SwaggerSocketConnection connection = connection(req);
+            return connection == null || connection.getTransaction(String.class.cast(req.getAttribute(TRANSACTION_IDENTITY))) == null;
+        }
+
+        /**
+         * @return true if the body of this response is sent in chunks, only for the WebSocket responses as the
+         * transactions of the other transports expect a single response per request
+         */
+        boolean isChunked() {
+            return maxchunksize > 0 && endsWithLastFrame();
+        }
+
+        /**
+         * @return true if this response is closed by a frame with last="true", for the chunked responses and the
+         * responses holding a credit, the client waits for that frame to gather the chunks or to send its next request
+         */
+        private boolean endsWithLastFrame() {
+            AtmosphereRequest req = request();
+            if (req == null || lookupRequest(req) == null) {
+                return false;
+            }
+            SwaggerSocketConnection connection = connection(req);
+            return connection != null && (maxchunksize > 0 || connection.limitsCredits())
+                    && connection.getTransaction(String.class.cast(req.getAttribute(TRANSACTION_IDENTITY))) == null;
+        }
+
+        /**
+         * Close the response if the resource returned without closing it, a chunked response still needs its
+         * last frame.
+         */
+        void end() throws IOException {
+            if (!closed) {
+                getOutputStream().close();
+            }
+        }
+
+        void holdCredit(SwaggerSocketConnection connection) {
+            credit.set(connection);
+        }
+
+        void returnCredit() {
+            SwaggerSocketConnection connection = credit.getAndSet(null);
+            if (connection != null) {
+                connection.releaseCredit();
+            }
+        }
+
+        private ResponseCoalescer coalescer() {
+            AtmosphereRequest req = request();
+            if (req == null || lookupRequest(req) == null) {
+                return null;
+            }
+            SwaggerSocketConnection connection = connection(req);
+            return connection == null ? null : connection.getCoalescer();
+        }
+
         @Override
         public ServletOutputStream getOutputStream() throws IOException {
             final ServletOutputStream delegate = super.getOutputStream();
 
             return new ServletOutputStream() {
-                private boolean written;
-
                 @Override
                 public void write(int i) throws IOException {
                     write(new byte[]{(byte)i});
@@ -618,11 +1534,26 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
 
                 @Override
                 public void close() throws IOException {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    boolean ended = last;
                     last = true;
-                    if (!written && emptyentity) {
-                        writeUsingBuffer(new byte[0], 0, 0);
+                    try {
+                        if (!written && (emptyentity || endsWithLastFrame())) {
+                            writeUsingBuffer(new byte[0], 0, 0);
+                        } else if (written && !ended && !lazywrite && endsWithLastFrame()) {
+                            // the writes went out with last=false, end the stream
+                            writeUsingBuffer(new byte[0], 0, 0);
+                        }
+                        closeUsingBuffer();
+                    } finally {
+                        returnCredit();
+                        if (inFlight != null) {
+                            inFlight.done();
+                        }
                     }
-                    closeUsingBuffer();
                 }
 
                 @Override
@@ -633,13 +1564,57 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                 @Override
                 public void write(byte[] b, int off, int len) throws IOException {
                     written = true;
-                    writeUsingBuffer(b, off, len);
+                    if (len > maxchunksize && maxchunksize > 0 && isChunked()
+                            && ResponseEnvelopeWriter.isUTF8(getCharacterEncoding())) {
+                        writeInChunks(b, off, len);
+                    } else {
+                        writeUsingBuffer(b, off, len);
+                    }
                 }
 
                 @Override
                 public void write(byte[] b) throws IOException {
-                    written = true;
-                    writeUsingBuffer(b, 0, b.length);
+                    write(b, 0, b.length);
+                }
+
+                private void writeInChunks(byte[] b, int off, int len) throws IOException {
+                    int end = off + len;
+                    while (off < end) {
+                        int n = Math.min(maxchunksize, end - off);
+                        if (off + n < end) {
+                            // don't split a UTF-8 sequence, every chunk is decoded on its own
+                            int m = n;
+                            while (m > 0 && (b[off + m] & 0xC0) == 0x80) {
+                                m--;
+                            }
+                            if (m > 0) {
+                                n = m;
+                            }
+                        }
+                        writeChunk(b, off, n);
+                        off += n;
+                    }
+                }
+
+                private void writeChunk(byte[] b, int off, int len) throws IOException {
+                    SwaggerSocketConnection connection = connection(request());
+                    try {
+                        if (connection != null && !connection.enqueueChunk(chunkwritetimeout)) {
+                            throw new IOException("Timed out after " + chunkwritetimeout + " ms writing a chunk of "
+                                    + lookupRequest(request()).getUuid());
+                        }
+                    } catch (InterruptedException e) {
+                        // cancelled
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                    try {
+                        writeUsingBuffer(b, off, len);
+                    } finally {
+                        if (connection != null) {
+                            connection.dequeueChunk();
+                        }
+                    }
                 }
 
                 private void writeUsingBuffer(byte[] b, int off, int len) throws IOException {
@@ -647,15 +1622,17 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                     try {
                         if (lazywrite && depth == 1 && !isStatusMessage(b, off, len)) {
                             if (buffer != null) {
-                                delegate.write(buffer, 0, buffersize);
+                                writeOut(buffer, 0, buffersize);
                             }
                             if (buffer == null || buffer.length < len) {
-                                buffer = new byte[len];
+                                releaseBuffer();
+                                bufferOwner = getBufferPool();
+                                buffer = bufferOwner.acquire(len);
                             }
                             System.arraycopy(b, off, buffer, 0, len);
                             buffersize = len;
                         } else {
-                            delegate.write(b, off, len);
+                            writeOut(b, off, len);
                         }
                     } finally {
                         depth--;
@@ -667,13 +1644,15 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                     try {
                         if (lazywrite && depth == 1) {
                             if (buffer != null) {
-                                delegate.write(buffer, 0, buffersize);
-                                buffer = null;
-                                buffersize = 0;
+                                try {
+                                    writeOut(buffer, 0, buffersize);
+                                } finally {
+                                    releaseBuffer();
+                                    buffersize = 0;
+                                }
                             }
-                            delegate.close();
                         }
-                        else {
+                        synchronized (writeLock) {
                             delegate.close();
                         }
                     } finally {
@@ -681,10 +1660,52 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                     }
                 }
 
+                private void releaseBuffer() {
+                    if (buffer != null) {
+                        // written out synchronously, the pool may hand it to another response
+                        bufferOwner.release(buffer);
+                        buffer = null;
+                        bufferOwner = null;
+                    }
+                }
+
+                private void writeOut(byte[] b, int off, int len) throws IOException {
+                    if (last) {
+                        // before the client sees the last frame, it may send its next request right away
+                        returnCredit();
+                    }
+                    if (isDropped()) {
+                        return;
+                    }
+                    ResponseCoalescer coalescer = coalescer();
+                    if (coalescer != null && !isStatusMessage(b, off, len)) {
+                        // the same frame the AsyncIOInterceptor would have written for this write
+                        byte[] frame = toFrame(WrappedAtmosphereResponse.this,
+                                off == 0 && len == b.length ? b : Arrays.copyOfRange(b, off, off + len));
+                        if (frame != null) {
+                            coalescer.add(frame, len);
+                        }
+                    } else {
+                        synchronized (writeLock) {
+                            delegate.write(b, off, len);
+                        }
+                    }
+                }
+
                 private boolean isStatusMessage(byte[] b, int off, int len) {
                     return len > 10 && new String(b, off, 10).startsWith("{\"status\"");
                 }
             };
         }
     }
+
+    /**
+     * Writes an already serialized frame, the coalesced {@link ResponseMessage}s or a {@link Heartbeat}.
+     */
+    private static final class FrameAtmosphereResponse extends AtmosphereResponse {
+        public FrameAtmosphereResponse(AtmosphereResponse resp) {
+            super((HttpServletResponse) resp.getResponse(), resp.getAsyncIOWriter(), resp.request(), resp.isDestroyable());
+            setContentType("application/json");
+        }
+    }
 }
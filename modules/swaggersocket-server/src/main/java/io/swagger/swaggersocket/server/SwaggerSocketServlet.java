@@ -17,13 +17,18 @@ package io.swagger.swaggersocket.server;
 
 import org.atmosphere.client.TrackMessageSizeInterceptor;
 import org.atmosphere.cpr.ApplicationConfig;
+import org.atmosphere.cpr.AtmosphereInterceptor;
 import org.atmosphere.cpr.AtmosphereServlet;
 import org.atmosphere.util.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import java.lang.management.ManagementFactory;
 
 /**
  * The SwaggerSocket Servlet, which enable support for the SwaggerSocket Protocol.
@@ -32,6 +37,7 @@ public class SwaggerSocketServlet extends AtmosphereServlet {
 	private static final long serialVersionUID = 4402468478554948436L;
 
 	private final Logger logger = LoggerFactory.getLogger(SwaggerSocketServlet.class);
+    private transient ObjectName metricsName;
 
     public SwaggerSocketServlet() {
         this(false);
@@ -55,7 +61,49 @@ public class SwaggerSocketServlet extends AtmosphereServlet {
         t.excludedContentType("application/javascript").excludedContentType("text/html").excludedContentType("text/plain").messageDelimiter("<->");
         t.configure(framework().getAtmosphereConfig());
         framework().interceptor(t);
-        framework().interceptor(new SwaggerSocketProtocolInterceptor());
+        registerMetrics(sc.getServletName(), protocolInterceptor().getMetrics());
         logger.info("Swagger Socket installed {}", Version.getRawVersion());
     }
+
+    @Override
+    public void destroy() {
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                logger.debug("Unable to unregister {}", metricsName, e);
+            }
+            metricsName = null;
+        }
+        super.destroy();
+    }
+
+    /**
+     * @return the interceptor found by the annotation scanning, the framework doesn't install a second one of a class
+     */
+    private SwaggerSocketProtocolInterceptor protocolInterceptor() {
+        for (AtmosphereInterceptor i : framework().interceptors()) {
+            if (i instanceof SwaggerSocketProtocolInterceptor) {
+                return SwaggerSocketProtocolInterceptor.class.cast(i);
+            }
+        }
+        SwaggerSocketProtocolInterceptor interceptor = new SwaggerSocketProtocolInterceptor();
+        framework().interceptor(interceptor);
+        return interceptor;
+    }
+
+    /**
+     * Expose the metrics as io.swagger.swaggersocket:type=SwaggerSocketMetrics,name=&lt;servlet name&gt;.
+     */
+    private void registerMetrics(String servletName, SwaggerSocketMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName("io.swagger.swaggersocket:type=SwaggerSocketMetrics,name="
+                    + ObjectName.quote(servletName == null ? "SwaggerSocket" : servletName));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(metrics, name);
+            metricsName = name;
+        } catch (JMException e) {
+            logger.warn("Unable to register the SwaggerSocket metrics", e);
+        }
+    }
 }